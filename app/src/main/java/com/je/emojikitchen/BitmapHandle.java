@@ -0,0 +1,52 @@
+package com.je.emojikitchen;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted owner of a cached bitmap. The memory cache holds one reference and
+ * everything that draws or encodes the bitmap holds another. When the last reference is
+ * released the bitmap goes back to the {@link BitmapPool}, so a bitmap that is still on
+ * screen is never reused or recycled underneath its view.
+ */
+public final class BitmapHandle {
+    private final Bitmap bitmap;
+    private final BitmapPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /** Creates a handle holding one reference, owned by the caller. */
+    BitmapHandle(Bitmap bitmap, BitmapPool pool) {
+        this.bitmap = bitmap;
+        this.pool = pool;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Adds a reference unless the handle was already fully released, which can happen when
+     * a lookup races with an eviction.
+     */
+    public boolean tryRetain() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            pool.put(bitmap);
+        } else if (count < 0) {
+            throw new IllegalStateException("BitmapHandle released too many times");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.je.emojikitchen;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import com.je.emojikitchen.core.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Released bitmaps, bucketed by dimensions, for {@code BitmapFactory.Options.inBitmap} and
+ * scaling targets to reuse. Only mutable ARGB_8888 bitmaps are kept. Once the pool holds
+ * {@code maxSize} bytes, further bitmaps are recycled instead.
+ */
+class BitmapPool {
+    private final HashMap<Long, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+    private final long maxSize;
+    private final Metrics metrics = Metrics.getInstance();
+    private long size;
+
+    BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Nullable
+    synchronized Bitmap get(int width, int height) {
+        ArrayDeque<Bitmap> bucket = buckets.get(bucketKey(width, height));
+        if (bucket == null || bucket.isEmpty()) {
+            metrics.increment(Metrics.Counter.POOL_MISS);
+            return null;
+        }
+        metrics.increment(Metrics.Counter.POOL_HIT);
+        Bitmap bitmap = bucket.pop();
+        size -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap.recycle();
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (size + bytes <= maxSize) {
+                long key = bucketKey(bitmap.getWidth(), bitmap.getHeight());
+                ArrayDeque<Bitmap> bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayDeque<>();
+                    buckets.put(key, bucket);
+                }
+                bucket.push(bitmap);
+                size += bytes;
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        for (ArrayDeque<Bitmap> bucket : buckets.values()) {
+            for (Bitmap bitmap : bucket) {
+                bitmap.recycle();
+            }
+        }
+        buckets.clear();
+        size = 0;
+    }
+
+    private static long bucketKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+}
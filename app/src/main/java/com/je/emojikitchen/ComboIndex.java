@@ -0,0 +1,170 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+
+import androidx.annotation.WorkerThread;
+
+import com.je.emojikitchen.core.EmojiCodes;
+import com.je.emojikitchen.core.PackedKeys;
+
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Prebuilt tables of which emoji pairs exist upstream and which of them look different
+ * depending on the order of the two emoji, shipped as {@code assets/combos.bin} and
+ * generated by {@code tools/build_combo_index.py}. The file is a 16 byte header followed
+ * by one bit per ordered pair of {@code R.array.emoji_codes} positions for each table:
+ *
+ * <pre>
+ *     int   magic     'EKCI'
+ *     int   version   2
+ *     int   count     number of emoji codes
+ *     int   crc32     of the codes joined with '\n', detects a stale table
+ *     byte  exists[(count * count + 7) / 8]     bit (i1 * count + i2), LSB first
+ *     byte  ordered[(count * count + 7) / 8]    same layout, set if the order matters
+ * </pre>
+ *
+ * Version 1 files end after the first table. Until the table is loaded, or when it is
+ * missing or does not match the codes, every pair is reported as possible and the API
+ * stays the source of truth.
+ *
+ * <p>A pair whose order does not matter is stored, fetched and remembered as missing in
+ * one canonical order, the lower position first, see {@link #canonicalKey}. Without the
+ * second table every pair keeps the order it was asked for. The canonical order must not
+ * change while keys are in use, so {@link #isSwapped} and {@link #canonicalKey} wait for
+ * the load to finish and must stay off the main thread until {@link #isReady()}.
+ */
+public class ComboIndex {
+    static final String ASSET_NAME = "combos.bin";
+    static final int MAGIC = 0x454B4349;
+    static final int VERSION = 2;
+
+    private static ComboIndex instance;
+
+    private final Context context;
+    private final EmojiCatalog catalog;
+    private final int checksum;
+    private volatile byte[] bits;
+    private volatile byte[] orderedBits;
+    private boolean loaded;
+    // Set once load() returned, whether or not a table was found.
+    private volatile boolean ready;
+
+    private ComboIndex(Context context, EmojiCatalog catalog) {
+        this.context = context;
+        this.catalog = catalog;
+        this.checksum = EmojiCodes.checksum(catalog.getCodes());
+    }
+
+    public static synchronized ComboIndex getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new ComboIndex(app, EmojiCatalog.getInstance(app));
+        }
+        return instance;
+    }
+
+    /** Reads the table once. Later calls return immediately. */
+    @WorkerThread
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try (DataInputStream in = new DataInputStream(context.getAssets().open(ASSET_NAME))) {
+            int version;
+            if (in.readInt() != MAGIC || (version = in.readInt()) < 1 || version > VERSION) {
+                throw new IOException("unexpected header in " + ASSET_NAME);
+            }
+            int count = in.readInt();
+            int crc = in.readInt();
+            if (count != catalog.size() || crc != checksum) {
+                throw new IOException(ASSET_NAME + " was built for a different emoji list");
+            }
+            byte[] table = new byte[(int) (((long) count * count + 7) / 8)];
+            in.readFully(table);
+            if (version >= 2) {
+                byte[] ordered = new byte[table.length];
+                in.readFully(ordered);
+                orderedBits = ordered;
+            }
+            bits = table;
+        } catch (FileNotFoundException e) {
+            // No table shipped, fall back to asking the API.
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            ready = true;
+        }
+    }
+
+    /** Whether a table was loaded. */
+    public boolean isLoaded() {
+        return bits != null;
+    }
+
+    /** Whether loading finished, after which canonical keys are computed without waiting. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** False only if the table is loaded and says the pair does not exist. */
+    public boolean mayExist(int position1, int position2) {
+        byte[] table = bits;
+        if (table == null || position1 < 0 || position2 < 0) {
+            return true;
+        }
+        int bit = position1 * catalog.size() + position2;
+        return (table[bit >>> 3] & (1 << (bit & 7))) != 0;
+    }
+
+    public boolean mayExist(String emoji1, String emoji2) {
+        return mayExist(catalog.positionOf(emoji1), catalog.positionOf(emoji2));
+    }
+
+    /**
+     * Whether {@code position1} with {@code position2} may look different from the reverse
+     * pair. True for every pair until a table that says otherwise is loaded.
+     */
+    public boolean isOrderSensitive(int position1, int position2) {
+        byte[] table = orderedBits;
+        if (table == null || position1 < 0 || position2 < 0) {
+            return true;
+        }
+        int bit = position1 * catalog.size() + position2;
+        return (table[bit >>> 3] & (1 << (bit & 7))) != 0;
+    }
+
+    /** Whether the pair is stored and fetched in the reverse order. Waits for the load. */
+    public boolean isSwapped(int position1, int position2) {
+        if (!ready) {
+            load();
+        }
+        return position1 > position2 && !isOrderSensitive(position1, position2);
+    }
+
+    public boolean isSwapped(String emoji1, String emoji2) {
+        return isSwapped(catalog.positionOf(emoji1), catalog.positionOf(emoji2));
+    }
+
+    /** Returns {@code key} with its emoji in canonical order, see {@link #isSwapped}. */
+    public long canonicalKey(long key) {
+        if (key == PackedKeys.NO_KEY) {
+            return key;
+        }
+        int first = PackedKeys.first(key);
+        int second = PackedKeys.second(key);
+        return isSwapped(first, second) ? PackedKeys.pack(second, first, PackedKeys.size(key)) : key;
+    }
+
+    public int positionOf(String emoji) {
+        return catalog.positionOf(emoji);
+    }
+
+    /** CRC32 of the emoji code list, for files that store pairs by position. */
+    public int getChecksum() {
+        return checksum;
+    }
+}
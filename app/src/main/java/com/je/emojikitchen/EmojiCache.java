@@ -1,53 +1,136 @@
 package com.je.emojikitchen;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
-import androidx.collection.LruCache;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.je.emojikitchen.core.EmojiCodes;
+import com.je.emojikitchen.core.FileStore;
+import com.je.emojikitchen.core.ImageSizes;
+import com.je.emojikitchen.core.ImageStore;
+import com.je.emojikitchen.core.KeyCodec;
+import com.je.emojikitchen.core.Metrics;
+import com.je.emojikitchen.core.PackedKeys;
+import com.je.emojikitchen.core.Resampler;
+import com.je.emojikitchen.core.SegmentStore;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EmojiCache {
-    private static final int MAX_MEMORY_CACHE_SIZE = (int) (Runtime.getRuntime().maxMemory() / 8);
+    private static final int MB = 1024 * 1024;
+    // Variants this small live in the thumbnail tier, which trims leave alone.
+    private static final int THUMBNAIL_MAX_SIZE = 64;
+    private static final int THUMBNAIL_CACHE_SIZE = MB;
     private static final int MAX_DISK_CACHE_SIZE = 100 * 1024 * 1024;
+    private static final int IO_THREADS = 2;
+    private static final long IO_KEEP_ALIVE_SECONDS = 30;
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+    private static final String FILE_STORE_DIR = "emoji_cache";
+    private static final String SEGMENT_STORE_DIR = "emoji_pack";
     private static EmojiCache instance;
+
+    /** Pixel arrays for deriving a size, reused by the thread that owns them. */
+    private static final class Scratch {
+        int[] pixels = new int[0];
+        int[] resampled = new int[0];
+        final Resampler.Buffers resampler = new Resampler.Buffers();
+    }
+
+    // Per I/O thread, and gone with the thread once the executor lets it idle out.
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
     
-    private final File cacheDir;
-    private final LruCache<String, Bitmap> memoryCache;
-    private final LinkedHashMap<String, Long> diskCache;
-    private long currentDiskCacheSize;
+    // The directory of the engine not in use, deleted once after switching engines.
+    private final File unusedDir;
+    private final KeyCodec codec;
+    private final ComboIndex comboIndex;
+    private final ThreadPoolExecutor ioExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final long maxMemoryCacheSize;
+    private final MemoryCache memoryCache;
+    private final MemoryCache thumbnailCache;
+    private final BitmapPool bitmapPool;
+    private final ImageStore store;
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final Metrics metrics = Metrics.getInstance();
 
     private EmojiCache(Context context) {
-        this.cacheDir = new File(context.getCacheDir(), "emoji_cache");
-        this.diskCache = new LinkedHashMap<>(100, 0.75f, true);
-        this.currentDiskCacheSize = 0;
+        EmojiCatalog catalog = EmojiCatalog.getInstance(context);
+        this.codec = catalog.getKeyCodec();
+        this.comboIndex = ComboIndex.getInstance(context);
+        File fileStoreDir = new File(context.getCacheDir(), FILE_STORE_DIR);
+        File segmentStoreDir = new File(context.getCacheDir(), SEGMENT_STORE_DIR);
+        if (BuildConfig.SEGMENT_STORE) {
+            this.store = new SegmentStore(segmentStoreDir, MAX_DISK_CACHE_SIZE,
+                    EmojiCodes.checksum(catalog.getCodes()));
+            this.unusedDir = fileStoreDir;
+        } else {
+            this.store = new FileStore(fileStoreDir, MAX_DISK_CACHE_SIZE, codec);
+            this.unusedDir = segmentStoreDir;
+        }
+        this.ioExecutor = createIoExecutor();
         
-        this.memoryCache = new LruCache<String, Bitmap>(MAX_MEMORY_CACHE_SIZE) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = activityManager.isLowRamDevice();
+        this.maxMemoryCacheSize = memoryCacheSize(activityManager.getMemoryClass(), lowRam);
+        this.memoryCache = new MemoryCache(maxMemoryCacheSize);
+        this.thumbnailCache = new MemoryCache(lowRam ? THUMBNAIL_CACHE_SIZE / 2 : THUMBNAIL_CACHE_SIZE);
+        this.bitmapPool = new BitmapPool(maxMemoryCacheSize / 4);
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
             @Override
-            protected int sizeOf(String key, Bitmap bitmap) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    return bitmap.getAllocationByteCount();
-                }
-                return bitmap.getByteCount();
+            public void onTrimMemory(int level) {
+                trimMemory(level);
             }
-            
+
             @Override
-            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
-                if (evicted && oldValue != null && !oldValue.isRecycled()) {
-                    oldValue.recycle();
-                }
+            public void onLowMemory() {
+                trimMemory(TRIM_MEMORY_COMPLETE);
             }
-        };
-        
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+        metrics.registerGauge("memory_bytes", memoryCache::size);
+        metrics.registerGauge("memory_max_bytes", () -> maxMemoryCacheSize);
+        metrics.registerGauge("thumbnail_bytes", thumbnailCache::size);
+        metrics.registerGauge("pool_bytes", bitmapPool::size);
+        metrics.registerGauge("disk_bytes", store::size);
+        metrics.registerGauge("disk_max_bytes", () -> MAX_DISK_CACHE_SIZE);
+        metrics.registerGauge("disk_entries", store::entryCount);
+
         initializeCache();
     }
 
+    public interface Callback {
+        /**
+         * Receives a handle holding one reference on behalf of the callback, which must
+         * release it once the bitmap is no longer drawn.
+         */
+        void onLoaded(@Nullable BitmapHandle handle);
+    }
+
     public static synchronized EmojiCache getInstance(Context context) {
         if (instance == null) {
             instance = new EmojiCache(context);
@@ -55,109 +138,409 @@ public class EmojiCache {
         return instance;
     }
 
-    private void initializeCache() {
-        if (!cacheDir.exists()) {
-            cacheDir.mkdirs();
-        }
+    /**
+     * An eighth of the heap the system grants a normal app, a sixteenth on low-RAM devices,
+     * and never more than an eighth of what this process may actually use.
+     */
+    private static long memoryCacheSize(int memoryClassMb, boolean lowRam) {
+        long budget = (long) memoryClassMb * MB / (lowRam ? 16 : 8);
+        return Math.min(budget, Runtime.getRuntime().maxMemory() / 8);
     }
 
-    public synchronized void saveToCache(String emoji1, String emoji2, Bitmap bitmap) {
-        String key = getCacheKey(emoji1, emoji2);
-        if (bitmap == null || bitmap.getWidth() < 16 || bitmap.getHeight() < 16) {
+    /**
+     * Shrinks the bitmap tier as memory gets tighter: by a quarter while running low, by
+     * half once critical or in the background, and entirely when the process is among the
+     * next to be killed. Pooled bitmaps are dropped at every step. The thumbnail tier is
+     * kept, so the grid and previews still draw right away when the app comes back.
+     */
+    private void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            memoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            memoryCache.trimToSize(maxMemoryCacheSize / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.trimToSize(maxMemoryCacheSize * 3 / 4);
+        } else {
             return;
         }
+        bitmapPool.clear();
+        metrics.increment(Metrics.Counter.MEMORY_TRIM);
+    }
 
-        Bitmap existing = memoryCache.get(key);
-        int bmpSize = Math.max(bitmap.getWidth(), bitmap.getHeight());
-        int existingSize = existing != null ? Math.max(existing.getWidth(), existing.getHeight()) : -1;
-        if (existing == null || bmpSize > existingSize) {
-            memoryCache.put(key, bitmap.copy(bitmap.getConfig(), false));
+    private void initializeCache() {
+        // Loading the store touches the disk, keep it off the thread that created the cache.
+        ioExecutor.execute(() -> {
+            // Keys are canonical once the combo index is loaded, so load it before any lookup.
+            comboIndex.load();
             try {
-                File file = new File(cacheDir, key + ".png");
-                try (FileOutputStream out = new FileOutputStream(file)) {
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-                    long fileSize = file.length();
-                    diskCache.put(key, fileSize);
-                    currentDiskCacheSize += fileSize;
-                    trimDiskCache();
-                }
+                store.load();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            deleteRecursively(unusedDir);
+        });
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
         }
+        file.delete();
     }
 
-    public synchronized Bitmap loadFromCache(String emoji1, String emoji2, int reqWidth) {
-        String key = getCacheKey(emoji1, emoji2);
+    private static ThreadPoolExecutor createIoExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS,
+                IO_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "EmojiCache-io-" + threadCount.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        Bitmap cached = memoryCache.get(key);
-        if (cached != null) {
-            return cached;
+    /**
+     * Executor shared by everything that reads or writes cache files. Work submitted here
+     * never runs on the UI thread.
+     */
+    public Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Returns the combination at exactly {@code size} pixels, decoding and downscaling on
+     * the I/O executor when needed. The callback runs on the main thread and receives null
+     * when no variant at least {@code size} pixels wide is cached. Memory hits are
+     * delivered synchronously when called from the main thread.
+     */
+    public void load(String emoji1, String emoji2, int size, Callback callback) {
+        // Keys wait for the combo index, which only the I/O executor may do.
+        long key = comboIndex.isReady() ? keyOf(emoji1, emoji2, size) : PackedKeys.NO_KEY;
+        if (key != PackedKeys.NO_KEY && Looper.myLooper() == Looper.getMainLooper()) {
+            BitmapHandle cached = tierFor(key).get(key);
+            if (cached != null) {
+                metrics.increment(Metrics.Counter.MEMORY_HIT);
+                touchAsync(key);
+                callback.onLoaded(cached);
+                return;
+            }
         }
+        ioExecutor.execute(() -> {
+            BitmapHandle result = loadFromCache(emoji1, emoji2, size);
+            mainHandler.post(() -> callback.onLoaded(result));
+        });
+    }
 
-        File file = new File(cacheDir, key + ".png");
-        if (file.exists()) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-            options.inMutable = true;
+    /**
+     * Finds the largest cached variant smaller than {@code size} and delivers it on the
+     * main thread at its own resolution, or null if there is none, for showing while the
+     * {@code size} variant downloads. The callback owns one reference, as with
+     * {@link #load}.
+     */
+    public void loadPreview(String emoji1, String emoji2, int size, Callback callback) {
+        ioExecutor.execute(() -> {
+            long key = keyOf(emoji1, emoji2, size);
+            int variant = key == PackedKeys.NO_KEY ? -1
+                    : store.floorSize(PackedKeys.combo(key), size - 1);
+            BitmapHandle result = variant > 0 ? loadFromCache(emoji1, emoji2, variant) : null;
+            mainHandler.post(() -> callback.onLoaded(result));
+        });
+    }
 
-            if (reqWidth > 0) {
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile(file.getAbsolutePath(), options);
-                options.inSampleSize = calculateInSampleSize(options, reqWidth, reqWidth);
-                options.inJustDecodeBounds = false;
+    public void clear(@Nullable Runnable onCleared) {
+        ioExecutor.execute(() -> {
+            clearCache();
+            if (onCleared != null) {
+                mainHandler.post(onCleared);
             }
+        });
+    }
 
-            Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
-            if (bitmap != null) {
-                memoryCache.put(key, bitmap);
+    private void touchAsync(long key) {
+        ioExecutor.execute(() -> store.touch(key));
+    }
+
+    /**
+     * Streams an encoded image into the cache exactly as it was received, as the variant
+     * {@code key} from {@link #keyOf}. The store only replaces older bytes once the new
+     * ones are complete, so a failed download never leaves a truncated PNG behind.
+     * Decoding is deferred until the image is loaded.
+     */
+    @WorkerThread
+    public void saveStream(long key, InputStream in) throws IOException {
+        if (key == PackedKeys.NO_KEY) {
+            throw new IOException("no cache key for the variant");
+        }
+        long start = System.nanoTime();
+        long total = store.write(key, out -> {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
             }
-            return bitmap;
+        });
+        // A bitmap decoded from older bytes must not outlive them.
+        tierFor(key).remove(key);
+        metrics.add(Metrics.Counter.BYTES_DOWNLOADED, total);
+        metrics.recordSince(Metrics.Stage.STORE, start);
+        scheduleMaintenance();
+    }
+
+    /**
+     * Stores the first {@code length} bytes of {@code data} as the variant named
+     * {@code name}, a {@link com.je.emojikitchen.core.CacheKeys#variantKey} without
+     * extension. Returns false if the cache has no key for the name.
+     */
+    @WorkerThread
+    public boolean saveImported(String name, byte[] data, int length) throws IOException {
+        long key = comboIndex.canonicalKey(codec.decode(name));
+        if (key == PackedKeys.NO_KEY) {
+            return false;
         }
-        return null;
+        store.write(key, out -> out.write(data, 0, length));
+        tierFor(key).remove(key);
+        scheduleMaintenance();
+        return true;
     }
 
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        int height = options.outHeight;
-        int width = options.outWidth;
-        int inSampleSize = 1;
+    /**
+     * The key of a variant, with the pair in the order of {@link ComboIndex#canonicalKey} so
+     * both orders of a pair that looks the same share one entry, or
+     * {@link PackedKeys#NO_KEY} if it cannot be cached. Waits for the combo index to load.
+     */
+    public long keyOf(String emoji1, String emoji2, int size) {
+        return comboIndex.canonicalKey(codec.encode(emoji1, emoji2, size));
+    }
 
-        if (height > reqHeight || width > reqWidth) {
-            int halfHeight = height / 2;
-            int halfWidth = width / 2;
+    private MemoryCache tierFor(long key) {
+        return PackedKeys.size(key) <= THUMBNAIL_MAX_SIZE ? thumbnailCache : memoryCache;
+    }
 
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
-            }
+    private void removeEntry(long key) {
+        store.remove(key);
+        scheduleMaintenance();
+    }
+
+    /**
+     * Trims and compacts the store on the I/O executor, at most one pass queued at a time,
+     * so writers and lookups never wait for eviction.
+     */
+    private void scheduleMaintenance() {
+        if (!store.needsMaintenance() || !maintenanceScheduled.compareAndSet(false, true)) {
+            return;
         }
-        return inSampleSize;
+        ioExecutor.execute(() -> {
+            maintenanceScheduled.set(false);
+            store.maintain();
+        });
     }
 
-    private void trimDiskCache() {
-        while (currentDiskCacheSize > MAX_DISK_CACHE_SIZE && !diskCache.isEmpty()) {
-            Map.Entry<String, Long> eldest = diskCache.entrySet().iterator().next();
-            File file = new File(cacheDir, eldest.getKey() + ".png");
-            if (file.exists()) {
-                currentDiskCacheSize -= eldest.getValue();
-                file.delete();
-            }
-            diskCache.remove(eldest.getKey());
+    /**
+     * Returns the combination at exactly {@code size} pixels. An exact variant is decoded
+     * as is, otherwise the cheapest stored variant larger than {@code size} is resampled
+     * down and the result is stored as a variant of its own, so the next request for this
+     * size skips both the download and the resampling. Returns null when every stored
+     * variant is smaller. The caller owns one reference to the returned handle and must
+     * release it.
+     */
+    @WorkerThread
+    @Nullable
+    public BitmapHandle loadFromCache(String emoji1, String emoji2, int size) {
+        long key = keyOf(emoji1, emoji2, size);
+        if (key == PackedKeys.NO_KEY) {
+            metrics.increment(Metrics.Counter.CACHE_MISS);
+            return null;
+        }
+
+        BitmapHandle cached = tierFor(key).get(key);
+        if (cached != null) {
+            metrics.increment(Metrics.Counter.MEMORY_HIT);
+            store.touch(key);
+            return cached;
         }
+
+        long combo = PackedKeys.combo(key);
+        int variant = store.ceilingSize(combo, size);
+        if (variant < 0) {
+            metrics.increment(Metrics.Counter.CACHE_MISS);
+            return null;
+        }
+        long variantKey = PackedKeys.withSize(combo, variant);
+        Bitmap bitmap = decode(read(variantKey), size);
+        if (bitmap == null) {
+            metrics.increment(Metrics.Counter.DECODE_FAILURE);
+            metrics.increment(Metrics.Counter.CACHE_MISS);
+            removeEntry(variantKey);
+            return null;
+        }
+        metrics.increment(Metrics.Counter.DISK_HIT);
+        store.touch(variantKey);
+        BitmapHandle handle = new BitmapHandle(bitmap, bitmapPool);
+        tierFor(key).put(key, handle);
+        // Custom sizes are resampled again on the next miss instead of filling the store
+        // with one re-encoded PNG for every size between 1 and 512.
+        if (variant != size && ImageSizes.isSliderSize(size)) {
+            storeDerivedAsync(key, handle);
+        }
+        scheduleMaintenance();
+        return handle;
     }
 
-    public synchronized void clearCache() {
-        memoryCache.evictAll();
-        File[] files = cacheDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                file.delete();
+    /**
+     * Encodes a resampled variant to PNG on the I/O executor and adds it to the cache. Unlike
+     * downloads, which are stored verbatim, this pays for one lossless encode so the next
+     * load skips the resampling.
+     */
+    private void storeDerivedAsync(long key, BitmapHandle handle) {
+        if (!handle.tryRetain()) {
+            return;
+        }
+        ioExecutor.execute(() -> {
+            try {
+                if (store.contains(key)) {
+                    return;
+                }
+                long start = System.nanoTime();
+                store.write(key, out -> handle.getBitmap().compress(Bitmap.CompressFormat.PNG, 100, out));
+                metrics.recordSince(Metrics.Stage.ENCODE, start);
+                scheduleMaintenance();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                handle.release();
             }
+        });
+    }
+
+    /**
+     * Whether a variant at least {@code size} pixels wide is stored. Waits for the store to
+     * load, so keep it off the main thread.
+     */
+    @WorkerThread
+    public boolean contains(String emoji1, String emoji2, int size) {
+        long key = keyOf(emoji1, emoji2, size);
+        return key != PackedKeys.NO_KEY && store.ceilingSize(PackedKeys.combo(key), size) >= 0;
+    }
+
+    /**
+     * Returns the stored file for the exact {@code size} variant, or null if that size was
+     * never stored or the store keeps no file per variant, see {@link #getEncoded}.
+     */
+    @WorkerThread
+    @Nullable
+    public File getFile(String emoji1, String emoji2, int size) {
+        long key = keyOf(emoji1, emoji2, size);
+        return key == PackedKeys.NO_KEY ? null : store.file(key);
+    }
+
+    /**
+     * Returns the stored PNG of the exact {@code size} variant, or null if that size was
+     * never stored. The buffer must not be written to.
+     */
+    @WorkerThread
+    @Nullable
+    public ByteBuffer getEncoded(String emoji1, String emoji2, int size) {
+        long key = keyOf(emoji1, emoji2, size);
+        return key == PackedKeys.NO_KEY ? null : read(key);
+    }
+
+    @Nullable
+    private ByteBuffer read(long key) {
+        try {
+            return store.read(key);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        diskCache.clear();
-        currentDiskCacheSize = 0;
     }
 
-    private String getCacheKey(String emoji1, String emoji2) {
-        return String.format("emoji_%s_%s", emoji1, emoji2);
+    /**
+     * Decodes {@code encoded} to a {@code size} x {@code size} bitmap, reusing pooled
+     * bitmaps both as the decode target and as the resampling target. The PNG is always
+     * decoded at full resolution, subsampling while decoding skips pixels and aliases thin
+     * strokes.
+     */
+    @Nullable
+    private Bitmap decode(@Nullable ByteBuffer encoded, int size) {
+        if (encoded == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = true;
+        decodeBytes(encoded, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+
+        Bitmap reusable = bitmapPool.get(options.outWidth, options.outHeight);
+        options.inBitmap = reusable;
+        Bitmap decoded;
+        try {
+            decoded = decodeBytes(encoded, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image, decode into a new one.
+            options.inBitmap = null;
+            decoded = decodeBytes(encoded, options);
+        }
+        if (reusable != null && decoded != reusable) {
+            bitmapPool.put(reusable);
+        }
+        if (decoded != null) {
+            metrics.recordSince(Metrics.Stage.DECODE, start);
+        }
+        if (decoded == null || (decoded.getWidth() == size && decoded.getHeight() == size)) {
+            return decoded;
+        }
+
+        start = System.nanoTime();
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        Scratch work = scratch.get();
+        if (work.pixels.length < width * height) {
+            work.pixels = new int[width * height];
+        }
+        if (work.resampled.length < size * size) {
+            work.resampled = new int[size * size];
+        }
+        int[] pixels = work.pixels;
+        int[] resampled = work.resampled;
+        decoded.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmapPool.put(decoded);
+        Resampler.resize(pixels, width, height, resampled, size, size, work.resampler);
+        Bitmap scaled = bitmapPool.get(size, size);
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        }
+        scaled.setPixels(resampled, 0, size, 0, 0, size, size);
+        metrics.recordSince(Metrics.Stage.SCALE, start);
+        return scaled;
+    }
+
+    /** Heap buffers decode in place, mapped ones are streamed without copying them first. */
+    @Nullable
+    private static Bitmap decodeBytes(ByteBuffer encoded, BitmapFactory.Options options) {
+        if (encoded.hasArray()) {
+            return BitmapFactory.decodeByteArray(encoded.array(),
+                    encoded.arrayOffset() + encoded.position(), encoded.remaining(), options);
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(encoded), null, options);
+    }
+
+    @WorkerThread
+    public void clearCache() {
+        memoryCache.evictAll();
+        thumbnailCache.evictAll();
+        bitmapPool.clear();
+        store.clear();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+
+import com.je.emojikitchen.core.EmojiCodes;
+import com.je.emojikitchen.core.KeyCodec;
+
+/**
+ * The emoji list from {@code R.array.emoji_codes}, decoded once per process. For every
+ * position it holds the hex code, the glyph string to draw and the codepoints packed into
+ * one array, plus the {@link KeyCodec} mapping codes to positions. Instances are immutable
+ * and shared by both grids and the cache.
+ */
+public final class EmojiCatalog {
+    private static EmojiCatalog instance;
+
+    private final String[] codes;
+    private final String[] glyphs;
+    private final int[] codePoints;
+    // Codepoints of position i are codePoints[offsets[i]] until codePoints[offsets[i + 1]].
+    private final int[] offsets;
+    private final KeyCodec keyCodec;
+
+    EmojiCatalog(String[] codes) {
+        int count = codes.length;
+        this.codes = codes.clone();
+        this.glyphs = new String[count];
+        this.offsets = new int[count + 1];
+        this.keyCodec = new KeyCodec(codes);
+
+        int[][] parsed = new int[count][];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            parsed[i] = EmojiCodes.parse(codes[i]);
+            if (parsed[i] == null) {
+                // Not a codepoint sequence, show the code itself.
+                parsed[i] = new int[0];
+                glyphs[i] = codes[i];
+            } else {
+                glyphs[i] = new String(parsed[i], 0, parsed[i].length);
+            }
+            length += parsed[i].length;
+        }
+        this.codePoints = new int[length];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = offset;
+            System.arraycopy(parsed[i], 0, codePoints, offset, parsed[i].length);
+            offset += parsed[i].length;
+        }
+        offsets[count] = offset;
+    }
+
+    public static synchronized EmojiCatalog getInstance(Context context) {
+        if (instance == null) {
+            instance = new EmojiCatalog(context.getApplicationContext().getResources()
+                    .getStringArray(R.array.emoji_codes));
+        }
+        return instance;
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public String getCode(int position) {
+        return codes[position];
+    }
+
+    public String getGlyph(int position) {
+        return glyphs[position];
+    }
+
+    /** Returns a copy of the hex codes, in catalog order. */
+    public String[] getCodes() {
+        return codes.clone();
+    }
+
+    public int codePointCount(int position) {
+        return offsets[position + 1] - offsets[position];
+    }
+
+    public int codePointAt(int position, int index) {
+        return codePoints[offsets[position] + index];
+    }
+
+    /** Returns the position of {@code code}, or -1 if it is not in the catalog. */
+    public int positionOf(String code) {
+        return keyCodec.positionOf(code);
+    }
+
+    public KeyCodec getKeyCodec() {
+        return keyCodec;
+    }
+}
@@ -0,0 +1,57 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Grid cell that draws one glyph out of the {@link GlyphAtlas}, centered in its padded
+ * area and scaled down only if the cell is smaller than the atlas. Shows just its
+ * background until an atlas is set.
+ */
+public class EmojiCellView extends View {
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect dst = new Rect();
+    private final Rect src = new Rect();
+    private GlyphAtlas atlas;
+    private int position = -1;
+
+    public EmojiCellView(Context context) {
+        super(context);
+    }
+
+    public EmojiCellView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setGlyph(@Nullable GlyphAtlas atlas, int position) {
+        if (this.atlas != atlas || this.position != position) {
+            this.atlas = atlas;
+            this.position = position;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (atlas == null || position < 0) {
+            return;
+        }
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        int side = Math.min(atlas.getCellSize(), Math.min(width, height));
+        if (side <= 0) {
+            return;
+        }
+        int left = getPaddingLeft() + (width - side) / 2;
+        int top = getPaddingTop() + (height - side) / 2;
+        dst.set(left, top, left + side, top + side);
+        atlas.draw(canvas, position, dst, paint, src);
+    }
+}
@@ -0,0 +1,139 @@
+package com.je.emojikitchen;
+
+import com.je.emojikitchen.core.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class EmojiClient {
+    private static final String API = "https://emk.vercel.app/s/%s_%s?size=%d";
+    private static final String USER_AGENT =
+            "EmojiKitchen/" + BuildConfig.VERSION_NAME + " (+https://github.com/jeeneo/kitchen)";
+    private static final String IMAGE_MIME_TYPE = "image/png";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static EmojiClient instance;
+
+    private final OkHttpClient client;
+    private final Metrics metrics = Metrics.getInstance();
+
+    public interface Callback {
+        /**
+         * Receives the encoded image while the response is still open. The stream is
+         * closed as soon as this returns. Only responses that are PNGs get here, anything
+         * else, such as a captive portal's page, is reported to {@link #onError}.
+         */
+        void onSuccess(InputStream body) throws IOException;
+        void onNotFound();
+        void onError(String message);
+    }
+
+    private EmojiClient() {
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .build();
+    }
+
+    public static synchronized EmojiClient getInstance() {
+        if (instance == null) {
+            instance = new EmojiClient();
+        }
+        return instance;
+    }
+
+    public static String buildUrl(String emoji1, String emoji2, int size) {
+        return String.format(Locale.US, API, emoji1, emoji2, size);
+    }
+
+    /**
+     * Downloads a combination once. The callback is invoked on the OkHttp thread, callers
+     * must hop to the UI thread themselves.
+     */
+    public Call fetch(String emoji1, String emoji2, int size, Callback callback) {
+        Call call = client.newCall(new Request.Builder()
+                .url(buildUrl(emoji1, emoji2, size))
+                .addHeader("User-Agent", USER_AGENT)
+                .addHeader("Accept", IMAGE_MIME_TYPE)
+                .build());
+        long start = System.nanoTime();
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled()) {
+                    metrics.increment(Metrics.Counter.NETWORK_ERROR);
+                }
+                callback.onError(e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                metrics.recordSince(Metrics.Stage.NETWORK, start);
+                try (ResponseBody body = response.body()) {
+                    if (response.code() == 404 || "404".equals(response.header("status"))) {
+                        metrics.increment(Metrics.Counter.NETWORK_NOT_FOUND);
+                        callback.onNotFound();
+                        return;
+                    }
+                    if (!response.isSuccessful() || body == null) {
+                        metrics.increment(Metrics.Counter.NETWORK_ERROR);
+                        callback.onError("HTTP " + response.code());
+                        return;
+                    }
+                    // A captive portal or an error page can come back as a 200, keep it
+                    // out of the cache.
+                    MediaType type = body.contentType();
+                    boolean pngType = type != null && "image".equals(type.type()) && "png".equals(type.subtype());
+                    InputStream png = pngType ? pngStream(body.byteStream()) : null;
+                    if (png == null) {
+                        metrics.increment(Metrics.Counter.NETWORK_ERROR);
+                        callback.onError("Not a PNG: " + type);
+                        return;
+                    }
+                    metrics.increment(Metrics.Counter.NETWORK_OK);
+                    callback.onSuccess(png);
+                } catch (IOException e) {
+                    if (!call.isCanceled()) {
+                        metrics.increment(Metrics.Counter.NETWORK_ERROR);
+                    }
+                    callback.onError(e.getMessage());
+                }
+            }
+        });
+        return call;
+    }
+
+    /**
+     * Returns {@code in} with its first bytes pushed back if they are the PNG signature, or
+     * null if they are not.
+     */
+    private static InputStream pngStream(InputStream in) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(in, PNG_SIGNATURE.length);
+        byte[] head = new byte[PNG_SIGNATURE.length];
+        int length = 0;
+        while (length < head.length) {
+            int read = stream.read(head, length, head.length - length);
+            if (read < 0) {
+                return null;
+            }
+            length += read;
+        }
+        if (!Arrays.equals(head, PNG_SIGNATURE)) {
+            return null;
+        }
+        stream.unread(head);
+        return stream;
+    }
+}
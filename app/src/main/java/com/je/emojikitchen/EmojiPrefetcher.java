@@ -0,0 +1,67 @@
+package com.je.emojikitchen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downloads the combinations of one emoji with a list of partners into the disk cache
+ * ahead of the user tapping them. Requests go through the {@link FetchScheduler} at
+ * {@link FetchScheduler.Priority#PREFETCH}, so they share downloads with the visible
+ * request and never hold up a tap, and every call to {@link #prefetch} or {@link #cancel}
+ * abandons the previous batch. Partners already stored, known to be missing or absent from
+ * the combination table are filtered out on the cache's I/O executor, since asking the
+ * store may wait for it to load. Prefetched images are only written to disk, they never
+ * displace decoded bitmaps from the memory cache.
+ */
+class EmojiPrefetcher {
+    private final FetchScheduler scheduler;
+    private final EmojiCache cache;
+    private final ComboIndex comboIndex;
+    private final NegativeCache negativeCache;
+    // Guarded by this.
+    private final List<FetchScheduler.Ticket> tickets = new ArrayList<>();
+    // Bumped by every cancel, so a batch still being filtered knows it was abandoned.
+    private int generation;
+
+    EmojiPrefetcher(FetchScheduler scheduler, EmojiCache cache, ComboIndex comboIndex,
+                    NegativeCache negativeCache) {
+        this.scheduler = scheduler;
+        this.cache = cache;
+        this.comboIndex = comboIndex;
+        this.negativeCache = negativeCache;
+    }
+
+    void prefetch(String emoji1, List<String> partners, int size) {
+        int batch;
+        synchronized (this) {
+            cancel();
+            batch = generation;
+        }
+        List<String> candidates = new ArrayList<>(partners);
+        cache.getIoExecutor().execute(() -> {
+            List<String> missing = new ArrayList<>(candidates.size());
+            for (String partner : candidates) {
+                if (comboIndex.mayExist(emoji1, partner) && !negativeCache.isKnownMissing(emoji1, partner)
+                        && !cache.contains(emoji1, partner, size)) {
+                    missing.add(partner);
+                }
+            }
+            synchronized (this) {
+                if (batch != generation) {
+                    return;
+                }
+                for (String partner : missing) {
+                    tickets.add(scheduler.fetch(emoji1, partner, size, FetchScheduler.Priority.PREFETCH, null));
+                }
+            }
+        });
+    }
+
+    synchronized void cancel() {
+        generation++;
+        for (FetchScheduler.Ticket ticket : tickets) {
+            ticket.cancel();
+        }
+        tickets.clear();
+    }
+}
@@ -1,33 +1,41 @@
 package com.je.emojikitchen;
 
 import android.content.Context;
-import android.graphics.Typeface;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class EmojiRecyclerAdapter extends RecyclerView.Adapter<EmojiRecyclerAdapter.EmojiViewHolder> {
-    private final String[] emojis;
-    private final Typeface emojiTypeface;
+    private static final float UNAVAILABLE_ALPHA = 0.3f;
+    private static final String PAYLOAD_SELECTION = "selection";
+    private static final String PAYLOAD_AVAILABILITY = "availability";
+    private static final String PAYLOAD_ATLAS = "atlas";
+
+    private final EmojiCatalog catalog;
+    private GlyphAtlas atlas;
     private int selectedPosition = -1;
     private final OnEmojiSelectedListener listener;
-    private final Pattern VARIATION_SELECTOR = Pattern.compile("-fe0f$");
+    private Availability availability;
 
     public interface OnEmojiSelectedListener {
         void onEmojiSelected(int position);
     }
 
-    public EmojiRecyclerAdapter(Context context, String[] emojis, OnEmojiSelectedListener listener) {
-        this.emojis = emojis;
+    public interface Availability {
+        boolean isAvailable(int position);
+    }
+
+    public EmojiRecyclerAdapter(Context context, EmojiCatalog catalog, OnEmojiSelectedListener listener) {
+        this.catalog = catalog;
         this.listener = listener;
-        this.emojiTypeface = Typeface.createFromAsset(context.getAssets(), "Noto-COLRv1-emojicompat.ttf");
+        GlyphAtlas atlas = GlyphAtlas.getInstance(context);
+        this.atlas = atlas.isReady() ? atlas : null;
     }
 
     @NonNull
@@ -35,25 +43,28 @@ public class EmojiRecyclerAdapter extends RecyclerView.Adapter<EmojiRecyclerAdap
     public EmojiViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.emoji_grid_item, parent, false);
-        return new EmojiViewHolder(view);
+        EmojiViewHolder holder = new EmojiViewHolder(view);
+        holder.itemView.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            setSelectedPosition(position);
+            listener.onEmojiSelected(position);
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull EmojiViewHolder holder, int position) {
-        String hexCode = emojis[position];
-        String emoji = convertHexToEmoji(hexCode);
-        holder.textView.setText(emoji);
-        holder.textView.setTypeface(emojiTypeface);
+        // Shows an empty cell until the atlas is ready.
+        holder.cellView.setGlyph(atlas, position);
+        holder.cellView.setContentDescription(catalog.getGlyph(position));
         holder.itemView.setSelected(position == selectedPosition);
-        holder.itemView.setOnClickListener(v -> {
-            setSelectedPosition(position);
-            listener.onEmojiSelected(position);
-        });
+        holder.itemView.setAlpha(isAvailable(position) ? 1f : UNAVAILABLE_ALPHA);
     }
 
     @Override
     public int getItemCount() {
-        return emojis.length;
+        return catalog.size();
     }
 
     public void setSelectedPosition(int position) {
@@ -62,41 +73,50 @@ public class EmojiRecyclerAdapter extends RecyclerView.Adapter<EmojiRecyclerAdap
             selectedPosition = position;
             
             if (oldPosition != -1) {
-                notifyItemChanged(oldPosition, "selection");
+                notifyItemChanged(oldPosition, PAYLOAD_SELECTION);
             }
             if (position != -1) {
-                notifyItemChanged(position, "selection");
+                notifyItemChanged(position, PAYLOAD_SELECTION);
             }
         }
     }
 
-    public int getSelectedPosition() {
-        return selectedPosition;
+    /** Dims the cells for which {@code availability} returns false, or none if null. */
+    public void setAvailability(@Nullable Availability availability) {
+        this.availability = availability;
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_AVAILABILITY);
     }
 
-    private String convertHexToEmoji(String hexCode) {
-        hexCode = VARIATION_SELECTOR.matcher(hexCode).replaceAll("");
-        String[] parts = hexCode.split("-");
-        StringBuilder emoji = new StringBuilder();
-        for (String part : parts) {
-            emoji.append(Character.toChars(Integer.parseInt(part, 16)));
+    /** Switches the cells from placeholders to glyphs once the atlas is loaded. */
+    public void setAtlas(GlyphAtlas atlas) {
+        if (this.atlas != atlas) {
+            this.atlas = atlas;
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_ATLAS);
         }
-        return emoji.toString();
+    }
+
+    private boolean isAvailable(int position) {
+        return availability == null || availability.isAvailable(position);
+    }
+
+    public int getSelectedPosition() {
+        return selectedPosition;
     }
 
     static class EmojiViewHolder extends RecyclerView.ViewHolder {
-        TextView textView;
+        EmojiCellView cellView;
 
         EmojiViewHolder(View itemView) {
             super(itemView);
-            textView = (TextView) itemView;
+            cellView = (EmojiCellView) itemView;
         }
     }
 
     @Override
     public void onBindViewHolder(@NonNull EmojiViewHolder holder, int position, @NonNull List<Object> payloads) {
-        if (!payloads.isEmpty()) {
+        if (!payloads.isEmpty() && !payloads.contains(PAYLOAD_ATLAS)) {
             holder.itemView.setSelected(position == selectedPosition);
+            holder.itemView.setAlpha(isAvailable(position) ? 1f : UNAVAILABLE_ALPHA);
             return;
         }
         onBindViewHolder(holder, position);
@@ -0,0 +1,102 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide holder of the Noto COLRv1 emoji typeface. The font is large, so it is parsed
+ * once on a background thread started by {@link #preload()}, and everything that renders
+ * emoji shares the resulting instance. Until then {@link #get()} returns null.
+ */
+public class EmojiTypeface {
+    static final String ASSET_NAME = "Noto-COLRv1-emojicompat.ttf";
+
+    private static EmojiTypeface instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Callback> callbacks = new ArrayList<>();
+    private volatile Typeface typeface;
+    private boolean started;
+
+    public interface Callback {
+        @MainThread
+        void onTypefaceReady(Typeface typeface);
+    }
+
+    private EmojiTypeface(Context context) {
+        this.context = context;
+    }
+
+    public static synchronized EmojiTypeface getInstance(Context context) {
+        if (instance == null) {
+            instance = new EmojiTypeface(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Starts parsing the font unless that already happened. */
+    public synchronized void preload() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Thread loader = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            Typeface loaded;
+            try {
+                loaded = Typeface.createFromAsset(context.getAssets(), ASSET_NAME);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                loaded = Typeface.DEFAULT;
+            }
+            final Typeface result = loaded;
+            mainHandler.post(() -> deliver(result));
+        }, "EmojiTypeface");
+        loader.start();
+    }
+
+    /** Returns the typeface, or null while it is still loading. */
+    @Nullable
+    public Typeface get() {
+        return typeface;
+    }
+
+    /**
+     * Calls {@code callback} with the typeface, right away if it is loaded and otherwise on
+     * the main thread once it is. Starts loading if nobody did yet.
+     */
+    @MainThread
+    public void whenReady(Callback callback) {
+        Typeface loaded = typeface;
+        if (loaded != null) {
+            callback.onTypefaceReady(loaded);
+            return;
+        }
+        callbacks.add(callback);
+        preload();
+    }
+
+    @MainThread
+    public void removeCallback(Callback callback) {
+        callbacks.remove(callback);
+    }
+
+    private void deliver(Typeface loaded) {
+        typeface = loaded;
+        List<Callback> pending = new ArrayList<>(callbacks);
+        callbacks.clear();
+        for (Callback callback : pending) {
+            callback.onTypefaceReady(loaded);
+        }
+    }
+}
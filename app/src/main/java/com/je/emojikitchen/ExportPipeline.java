@@ -0,0 +1,280 @@
+package com.je.emojikitchen;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.StringRes;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.FileProvider;
+
+import com.je.emojikitchen.core.CacheKeys;
+import com.je.emojikitchen.core.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Gets a combination out of the cache for sharing or saving, on a thread of its own so
+ * exports neither block the UI nor queue behind cache I/O.
+ *
+ * <p>When the requested size is stored, including sizes derived earlier, its bytes are
+ * used as is. A file of its own is shared straight from the cache through the
+ * FileProvider or copied into the gallery with {@link FileChannel#transferTo}, bytes in
+ * the segment store are written from their mapping. Only a size that has not been derived
+ * yet is resampled and encoded, directly into the destination. On API 29+
+ * the gallery copy goes through MediaStore, older releases write to the public pictures
+ * directory and ask the media scanner to pick it up.
+ */
+class ExportPipeline {
+    private static final String TAG = "ExportPipeline";
+    private static final String MIME_TYPE = "image/png";
+    private static final String ALBUM = "EmojiKitchen";
+    private static final String SHARE_DIR = "images";
+    private static final String LEGACY_SHARE_SUFFIX = "_tmp_share.png";
+    private static ExportPipeline instance;
+
+    interface Callback {
+        /** {@code uri} is a content URI for sharing, or the new gallery entry. */
+        void onExported(Uri uri);
+        void onError(String message);
+    }
+
+    private final Context context;
+    private final EmojiCache cache;
+    private final File shareDir;
+    private final String authority;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, TAG));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Metrics metrics = Metrics.getInstance();
+
+    private ExportPipeline(Context context) {
+        this.context = context;
+        this.cache = EmojiCache.getInstance(context);
+        this.shareDir = new File(context.getCacheDir(), SHARE_DIR);
+        this.authority = context.getPackageName() + ".fileprovider";
+        executor.execute(this::deleteSharedFiles);
+    }
+
+    static synchronized ExportPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new ExportPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Encoded copies only exist for receivers that were still reading them when the app
+     * last ran, so they are dropped on start rather than after a guessed delay.
+     */
+    private void deleteSharedFiles() {
+        deleteFiles(shareDir, null);
+        deleteFiles(new File(context.getCacheDir(), "emoji_cache"), LEGACY_SHARE_SUFFIX);
+    }
+
+    private static void deleteFiles(File dir, @Nullable String suffix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (suffix == null || file.getName().endsWith(suffix)) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Delivers a content URI of the {@code size} variant, readable by the share target. */
+    void share(String emoji1, String emoji2, int size, Callback callback) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                File file = cache.getFile(emoji1, emoji2, size);
+                if (file == null) {
+                    file = encodeForShare(emoji1, emoji2, size);
+                }
+                if (file == null) {
+                    post(callback, R.string.error_image_not_available, null);
+                    return;
+                }
+                Uri uri = FileProvider.getUriForFile(context, authority, file);
+                metrics.recordSince(Metrics.Stage.EXPORT, start);
+                mainHandler.post(() -> callback.onExported(uri));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Failed to prepare shared image", e);
+                post(callback, R.string.error_share_failed, e.getMessage());
+            }
+        });
+    }
+
+    /** Writes the variant to a file of its own, for stores that keep none. */
+    @WorkerThread
+    @Nullable
+    private File encodeForShare(String emoji1, String emoji2, int size) throws IOException {
+        ByteBuffer encoded = cache.getEncoded(emoji1, emoji2, size);
+        BitmapHandle handle = encoded == null ? cache.loadFromCache(emoji1, emoji2, size) : null;
+        if (encoded == null && handle == null) {
+            return null;
+        }
+        try {
+            if (!shareDir.exists()) {
+                shareDir.mkdirs();
+            }
+            File file = new File(shareDir, CacheKeys.variantKey(emoji1, emoji2, size) + ".png");
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                write(null, encoded, handle, out);
+            }
+            return file;
+        } finally {
+            if (handle != null) {
+                handle.release();
+            }
+        }
+    }
+
+    /** Adds the {@code size} variant to the device's pictures, in the {@link #ALBUM} album. */
+    void saveToGallery(String emoji1, String emoji2, int size, Callback callback) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            File file = cache.getFile(emoji1, emoji2, size);
+            ByteBuffer encoded = file == null ? cache.getEncoded(emoji1, emoji2, size) : null;
+            BitmapHandle handle = file == null && encoded == null
+                    ? cache.loadFromCache(emoji1, emoji2, size) : null;
+            if (file == null && encoded == null && handle == null) {
+                post(callback, R.string.error_image_not_available, null);
+                return;
+            }
+            String name = CacheKeys.comboKey(emoji1, emoji2) + ".png";
+            try {
+                Uri uri;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    uri = saveToMediaStore(name, file, encoded, handle);
+                } else {
+                    uri = saveToPicturesDir(name, file, encoded, handle);
+                }
+                metrics.recordSince(Metrics.Stage.EXPORT, start);
+                mainHandler.post(() -> callback.onExported(uri));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to save image", e);
+                post(callback, R.string.error_save_failed, e.getMessage());
+            } finally {
+                if (handle != null) {
+                    handle.release();
+                }
+            }
+        });
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private Uri saveToMediaStore(String name, @Nullable File file, @Nullable ByteBuffer encoded,
+            @Nullable BitmapHandle handle) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, name);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, MIME_TYPE);
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/" + ALBUM);
+        // Hidden from other apps until the bytes are complete.
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        Uri uri = resolver.insert(MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values);
+        if (uri == null) {
+            throw new IOException("MediaStore refused " + name);
+        }
+        try {
+            try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "w")) {
+                if (descriptor == null) {
+                    throw new IOException("cannot open " + uri);
+                }
+                try (FileOutputStream out = new FileOutputStream(descriptor.getFileDescriptor())) {
+                    write(file, encoded, handle, out);
+                }
+            }
+            values.clear();
+            values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            resolver.update(uri, values, null, null);
+            return uri;
+        } catch (IOException | RuntimeException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+    }
+
+    private Uri saveToPicturesDir(String name, @Nullable File file, @Nullable ByteBuffer encoded,
+            @Nullable BitmapHandle handle) throws IOException {
+        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), ALBUM);
+        dir.mkdirs();
+        File destination = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(destination)) {
+            write(file, encoded, handle, out);
+        }
+        MediaScannerConnection.scanFile(context, new String[]{destination.toString()},
+                new String[]{MIME_TYPE}, null);
+        return Uri.fromFile(destination);
+    }
+
+    /**
+     * Copies {@code file} or {@code encoded}, whichever is there, otherwise encodes the
+     * bitmap of {@code handle}.
+     */
+    private void write(@Nullable File file, @Nullable ByteBuffer encoded,
+                       @Nullable BitmapHandle handle, FileOutputStream out) throws IOException {
+        if (file != null) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                transferAll(in.getChannel(), out.getChannel());
+            }
+        } else if (encoded != null) {
+            FileChannel channel = out.getChannel();
+            ByteBuffer source = encoded.duplicate();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        } else {
+            encode(handle.getBitmap(), out);
+        }
+    }
+
+    /** {@link FileChannel#transferTo} may move fewer bytes than asked, so loop until done. */
+    private static void transferAll(FileChannel source, FileChannel target) throws IOException {
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                throw new IOException("transfer stalled at " + position + " of " + size);
+            }
+            position += transferred;
+        }
+    }
+
+    private void encode(Bitmap bitmap, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+            throw new IOException("PNG encoding failed");
+        }
+        metrics.recordSince(Metrics.Stage.ENCODE, start);
+    }
+
+    private void post(Callback callback, @StringRes int message, @Nullable String detail) {
+        String text = context.getString(message, detail);
+        mainHandler.post(() -> callback.onError(text));
+    }
+}
@@ -0,0 +1,284 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.je.emojikitchen.core.Metrics;
+import com.je.emojikitchen.core.PackedKeys;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+
+/**
+ * Single entry point for downloading combinations into the disk cache.
+ *
+ * <ul>
+ *     <li>Requests for the same variant share one download; every caller is told once it
+ *     is stored. Downloads are keyed by {@link EmojiCache#keyOf}, so both orders of a pair
+ *     that looks the same are one variant, fetched in the order it is stored in.</li>
+ *     <li>At most {@link #MAX_PER_HOST} downloads run against a host at once. Waiting
+ *     requests start by priority, then in the order they were made, and
+ *     {@link Priority#PREFETCH} work never takes the last slot, so a tap always starts
+ *     right away.</li>
+ *     <li>Cancelling a {@link Ticket} detaches its caller. Once no caller is left, the
+ *     download is dropped from the queue or its OkHttp call is cancelled.</li>
+ * </ul>
+ *
+ * Listeners run on an OkHttp thread, callers must hop to the UI thread themselves.
+ */
+public class FetchScheduler {
+    static final int MAX_PER_HOST = 4;
+    private static final int MAX_PREFETCH_PER_HOST = MAX_PER_HOST - 1;
+    private static FetchScheduler instance;
+
+    /** Ordered from least to most urgent. */
+    public enum Priority {
+        /** Warming the cache for cells the user may tap next. */
+        PREFETCH,
+        /** The combination on screen. */
+        VISIBLE
+    }
+
+    public interface Listener {
+        /** The variant is in the disk cache. */
+        void onStored();
+        void onNotFound();
+        void onError(String message);
+    }
+
+    private static final Comparator<Flight> BY_URGENCY = new Comparator<Flight>() {
+        @Override
+        public int compare(Flight a, Flight b) {
+            if (a.priority != b.priority) {
+                return b.priority.compareTo(a.priority);
+            }
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    /** One download and everyone waiting for it. */
+    private final class Flight {
+        // NO_KEY for a variant the cache cannot hold, such a flight is never shared.
+        final long key;
+        final String emoji1;
+        final String emoji2;
+        final int size;
+        final String host;
+        final long sequence;
+        final List<Ticket> tickets = new ArrayList<>(1);
+        Priority priority;
+        // Null while queued.
+        Call call;
+        boolean cancelled;
+
+        Flight(long key, String emoji1, String emoji2, int size, Priority priority, long sequence) {
+            this.key = key;
+            this.emoji1 = emoji1;
+            this.emoji2 = emoji2;
+            this.size = size;
+            this.host = HttpUrl.get(EmojiClient.buildUrl(emoji1, emoji2, size)).host();
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /** A caller's interest in one download. */
+    public final class Ticket {
+        private final Flight flight;
+        @Nullable
+        private final Listener listener;
+
+        private Ticket(Flight flight, @Nullable Listener listener) {
+            this.flight = flight;
+            this.listener = listener;
+        }
+
+        public boolean isFor(String emoji1, String emoji2, int size) {
+            long key = cache.keyOf(emoji1, emoji2, size);
+            return key != PackedKeys.NO_KEY ? key == flight.key
+                    : flight.emoji1.equals(emoji1) && flight.emoji2.equals(emoji2) && flight.size == size;
+        }
+
+        /**
+         * Stops delivering results to this ticket's listener. Cancelling a finished or
+         * already cancelled ticket does nothing.
+         */
+        public void cancel() {
+            detach(this);
+        }
+    }
+
+    private final EmojiClient client;
+    private final EmojiCache cache;
+    private final NegativeCache negativeCache;
+    private final EmojiCatalog catalog;
+    private final Metrics metrics = Metrics.getInstance();
+    // Guarded by this.
+    private final HashMap<Long, Flight> flights = new HashMap<>();
+    private final PriorityQueue<Flight> queue = new PriorityQueue<>(16, BY_URGENCY);
+    private final HashMap<String, Integer> runningPerHost = new HashMap<>();
+    private long nextSequence;
+
+    private FetchScheduler(EmojiClient client, EmojiCache cache, NegativeCache negativeCache,
+                           EmojiCatalog catalog) {
+        this.client = client;
+        this.cache = cache;
+        this.negativeCache = negativeCache;
+        this.catalog = catalog;
+    }
+
+    public static synchronized FetchScheduler getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new FetchScheduler(EmojiClient.getInstance(), EmojiCache.getInstance(app),
+                    NegativeCache.getInstance(app), EmojiCatalog.getInstance(app));
+        }
+        return instance;
+    }
+
+    /**
+     * Downloads the {@code size} variant into the disk cache unless a download of it is
+     * already queued or running, in which case the caller joins that one and raises its
+     * priority if needed. {@code listener} may be null for fire-and-forget work.
+     */
+    public synchronized Ticket fetch(String emoji1, String emoji2, int size, Priority priority,
+                                     @Nullable Listener listener) {
+        // Callers look the variant up in the cache first, so the combo index is ready and
+        // this does not wait for it.
+        long key = cache.keyOf(emoji1, emoji2, size);
+        Flight flight = null;
+        if (key != PackedKeys.NO_KEY) {
+            // Request the pair in the order it is stored in.
+            emoji1 = catalog.getCode(PackedKeys.first(key));
+            emoji2 = catalog.getCode(PackedKeys.second(key));
+            flight = flights.get(key);
+        }
+        if (flight == null) {
+            flight = new Flight(key, emoji1, emoji2, size, priority, nextSequence++);
+            if (key != PackedKeys.NO_KEY) {
+                flights.put(key, flight);
+            }
+            queue.add(flight);
+        } else {
+            metrics.increment(Metrics.Counter.REQUEST_SHARED);
+            if (priority.compareTo(flight.priority) > 0) {
+                flight.priority = priority;
+                if (flight.call == null) {
+                    // Re-insert so the queue sees the new priority.
+                    queue.remove(flight);
+                    queue.add(flight);
+                }
+            }
+        }
+        Ticket ticket = new Ticket(flight, listener);
+        flight.tickets.add(ticket);
+        pump();
+        return ticket;
+    }
+
+    private synchronized void detach(Ticket ticket) {
+        Flight flight = ticket.flight;
+        if (!flight.tickets.remove(ticket) || !flight.tickets.isEmpty()) {
+            return;
+        }
+        flight.cancelled = true;
+        flights.remove(flight.key);
+        if (flight.call == null) {
+            queue.remove(flight);
+        } else {
+            // The slot is freed once OkHttp reports the cancellation.
+            metrics.increment(Metrics.Counter.REQUEST_CANCELLED);
+            flight.call.cancel();
+        }
+    }
+
+    /** Starts queued downloads while their hosts have free slots. */
+    private void pump() {
+        List<Flight> blocked = null;
+        Flight flight;
+        while ((flight = queue.poll()) != null) {
+            int running = runningOn(flight.host);
+            int limit = flight.priority == Priority.PREFETCH ? MAX_PREFETCH_PER_HOST : MAX_PER_HOST;
+            if (running >= limit) {
+                if (blocked == null) {
+                    blocked = new ArrayList<>();
+                }
+                blocked.add(flight);
+                continue;
+            }
+            runningPerHost.put(flight.host, running + 1);
+            start(flight);
+        }
+        if (blocked != null) {
+            queue.addAll(blocked);
+        }
+    }
+
+    private int runningOn(String host) {
+        Integer running = runningPerHost.get(host);
+        return running != null ? running : 0;
+    }
+
+    private void start(Flight flight) {
+        flight.call = client.fetch(flight.emoji1, flight.emoji2, flight.size, new EmojiClient.Callback() {
+            @Override
+            public void onSuccess(InputStream body) throws IOException {
+                try {
+                    cache.saveStream(flight.key, body);
+                } catch (RuntimeException e) {
+                    // EmojiClient only turns an IOException into onError, fail the flight
+                    // here so its host slot is always freed.
+                    onError(e.toString());
+                    return;
+                }
+                for (Listener listener : finish(flight)) {
+                    listener.onStored();
+                }
+            }
+
+            @Override
+            public void onNotFound() {
+                negativeCache.markMissing(flight.emoji1, flight.emoji2);
+                for (Listener listener : finish(flight)) {
+                    listener.onNotFound();
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                for (Listener listener : finish(flight)) {
+                    listener.onError(message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Frees the slot of {@code flight}, starts whatever was waiting for it and returns the
+     * listeners still attached, none if the flight was cancelled.
+     */
+    private synchronized List<Listener> finish(Flight flight) {
+        runningPerHost.put(flight.host, runningOn(flight.host) - 1);
+        List<Listener> listeners = new ArrayList<>(flight.tickets.size());
+        if (!flight.cancelled) {
+            flights.remove(flight.key);
+            for (Ticket ticket : flight.tickets) {
+                if (ticket.listener != null) {
+                    listeners.add(ticket.listener);
+                }
+            }
+        }
+        flight.tickets.clear();
+        pump();
+        return listeners;
+    }
+}
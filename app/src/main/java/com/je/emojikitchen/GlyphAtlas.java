@@ -0,0 +1,294 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.je.emojikitchen.core.EmojiCodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Every glyph of the {@link EmojiCatalog} rasterized once into a few sprite sheets, so the
+ * grids blit bitmaps instead of laying out and rendering COLRv1 glyphs per cell. Sheets are
+ * stored in {@code cache/glyph_atlas} under a name made of the font, the app version, the
+ * emoji list checksum, the screen density and the cell size. A warm start decodes them
+ * without parsing the font at all, a cold start renders them with {@link EmojiTypeface}.
+ *
+ * <p>Cells are rasterized at no more than {@link #MAX_SHEET_CELL_SIZE} pixels and scaled up
+ * when drawn, which bounds the sheets at about 22 MB however large the density and font
+ * scale. They are kept while the app is merely hidden, so returning from the share sheet
+ * or another app finds them in place. {@link #release()} drops them once the process is
+ * in the background LRU list, and the next {@link #whenReady} decodes them again.
+ *
+ * <p>Each sheet holds up to {@code columns * columns} cells laid out row by row, so
+ * position {@code i} is cell {@code i % (columns * columns)} of sheet
+ * {@code i / (columns * columns)}.
+ */
+public class GlyphAtlas {
+    private static final String DIR_NAME = "glyph_atlas";
+    private static final float GLYPH_SIZE_SP = 32f;
+    // COLRv1 emoji are a little wider than the text size.
+    private static final float CELL_TO_GLYPH = 1.2f;
+    private static final int MAX_SHEET_SIZE = 2048;
+    private static final int MAX_SHEET_CELL_SIZE = 96;
+
+    private static GlyphAtlas instance;
+
+    private final Context context;
+    private final EmojiCatalog catalog;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Callback> callbacks = new ArrayList<>();
+    private final int densityDpi;
+    private final float glyphSize;
+    private final int cellSize;
+    // Pixels per cell in the sheets, cellSize or less.
+    private final int sheetCellSize;
+    private final float sheetGlyphSize;
+    private final int columns;
+    private final int sheetCount;
+    private volatile Bitmap[] sheets;
+    private boolean started;
+
+    public interface Callback {
+        @MainThread
+        void onAtlasReady(GlyphAtlas atlas);
+    }
+
+    private GlyphAtlas(Context context, EmojiCatalog catalog, int densityDpi, float glyphSize) {
+        this.context = context;
+        this.catalog = catalog;
+        this.densityDpi = densityDpi;
+        this.glyphSize = glyphSize;
+        this.cellSize = (int) Math.ceil(glyphSize * CELL_TO_GLYPH);
+        this.sheetCellSize = Math.min(cellSize, MAX_SHEET_CELL_SIZE);
+        this.sheetGlyphSize = glyphSize * sheetCellSize / cellSize;
+        this.columns = Math.max(1, MAX_SHEET_SIZE / sheetCellSize);
+        int perSheet = columns * columns;
+        this.sheetCount = (catalog.size() + perSheet - 1) / perSheet;
+    }
+
+    /**
+     * Returns the atlas for the current display metrics. A font scale or density change
+     * replaces the previous instance with one of the new cell size.
+     */
+    public static synchronized GlyphAtlas getInstance(Context context) {
+        Context app = context.getApplicationContext();
+        DisplayMetrics metrics = app.getResources().getDisplayMetrics();
+        float glyphSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, GLYPH_SIZE_SP, metrics);
+        if (instance == null || instance.glyphSize != glyphSize
+                || instance.densityDpi != metrics.densityDpi) {
+            instance = new GlyphAtlas(app, EmojiCatalog.getInstance(app), metrics.densityDpi, glyphSize);
+        }
+        return instance;
+    }
+
+    /** Starts loading or rendering the sheets unless that already happened. */
+    public synchronized void preload() {
+        if (started) {
+            return;
+        }
+        started = true;
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Bitmap[] loaded = readSheets();
+            mainHandler.post(() -> {
+                if (loaded != null) {
+                    deliver(loaded);
+                } else {
+                    EmojiTypeface.getInstance(context).whenReady(this::render);
+                }
+            });
+        }, "GlyphAtlas").start();
+    }
+
+    public boolean isReady() {
+        return sheets != null;
+    }
+
+    /**
+     * Calls {@code callback} with this atlas, right away if it is ready and otherwise on the
+     * main thread once it is. Starts loading if nobody did yet.
+     */
+    @MainThread
+    public void whenReady(Callback callback) {
+        if (sheets != null) {
+            callback.onAtlasReady(this);
+            return;
+        }
+        if (!callbacks.contains(callback)) {
+            callbacks.add(callback);
+        }
+        preload();
+    }
+
+    /**
+     * Drops the sheets, for when memory is tight. Views must stop drawing this atlas first.
+     * Does nothing while they are still loading.
+     */
+    @MainThread
+    public synchronized void release() {
+        if (sheets == null) {
+            return;
+        }
+        sheets = null;
+        started = false;
+    }
+
+    @MainThread
+    public void removeCallback(Callback callback) {
+        callbacks.remove(callback);
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /** Draws the glyph at {@code position} into {@code dst}. Does nothing until ready. */
+    public void draw(Canvas canvas, int position, Rect dst, Paint paint, Rect scratch) {
+        Bitmap[] loaded = sheets;
+        if (loaded == null || position < 0 || position >= catalog.size()) {
+            return;
+        }
+        int perSheet = columns * columns;
+        int index = position % perSheet;
+        int left = (index % columns) * sheetCellSize;
+        int top = (index / columns) * sheetCellSize;
+        scratch.set(left, top, left + sheetCellSize, top + sheetCellSize);
+        canvas.drawBitmap(loaded[position / perSheet], scratch, dst, paint);
+    }
+
+    @MainThread
+    private void render(Typeface typeface) {
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Bitmap[] rendered = renderSheets(typeface);
+            mainHandler.post(() -> deliver(rendered));
+            writeSheets(rendered);
+        }, "GlyphAtlas").start();
+    }
+
+    private void deliver(Bitmap[] loaded) {
+        sheets = loaded;
+        List<Callback> pending = new ArrayList<>(callbacks);
+        callbacks.clear();
+        for (Callback callback : pending) {
+            callback.onAtlasReady(this);
+        }
+    }
+
+    @WorkerThread
+    private Bitmap[] renderSheets(Typeface typeface) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setTextSize(sheetGlyphSize);
+        paint.setTextAlign(Paint.Align.CENTER);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        float baseline = sheetCellSize / 2f - (metrics.ascent + metrics.descent) / 2f;
+
+        int perSheet = columns * columns;
+        Bitmap[] rendered = new Bitmap[sheetCount];
+        Canvas canvas = new Canvas();
+        for (int sheet = 0; sheet < sheetCount; sheet++) {
+            int cells = Math.min(perSheet, catalog.size() - sheet * perSheet);
+            rendered[sheet] = Bitmap.createBitmap(sheetWidth(cells), sheetHeight(cells),
+                    Bitmap.Config.ARGB_8888);
+            canvas.setBitmap(rendered[sheet]);
+            for (int index = 0; index < cells; index++) {
+                int left = (index % columns) * sheetCellSize;
+                int top = (index / columns) * sheetCellSize;
+                canvas.save();
+                canvas.clipRect(left, top, left + sheetCellSize, top + sheetCellSize);
+                canvas.drawText(catalog.getGlyph(sheet * perSheet + index),
+                        left + sheetCellSize / 2f, top + baseline, paint);
+                canvas.restore();
+            }
+        }
+        canvas.setBitmap(null);
+        return rendered;
+    }
+
+    @WorkerThread
+    @Nullable
+    private Bitmap[] readSheets() {
+        int perSheet = columns * columns;
+        Bitmap[] loaded = new Bitmap[sheetCount];
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        for (int sheet = 0; sheet < sheetCount; sheet++) {
+            int cells = Math.min(perSheet, catalog.size() - sheet * perSheet);
+            File file = sheetFile(sheet);
+            Bitmap bitmap = file.exists() ? BitmapFactory.decodeFile(file.getPath(), options) : null;
+            if (bitmap == null || bitmap.getWidth() != sheetWidth(cells)
+                    || bitmap.getHeight() != sheetHeight(cells)) {
+                return null;
+            }
+            loaded[sheet] = bitmap;
+        }
+        return loaded;
+    }
+
+    /** Replaces whatever sheets were stored before with {@code rendered}. */
+    @WorkerThread
+    private void writeSheets(Bitmap[] rendered) {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        File[] stale = dir.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        for (int sheet = 0; sheet < rendered.length; sheet++) {
+            File file = sheetFile(sheet);
+            File tmp = new File(dir, file.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                rendered[sheet].compress(Bitmap.CompressFormat.PNG, 100, out);
+                out.getFD().sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+        }
+    }
+
+    private File sheetFile(int sheet) {
+        String font = EmojiTypeface.ASSET_NAME.substring(0, EmojiTypeface.ASSET_NAME.lastIndexOf('.'));
+        return new File(new File(context.getCacheDir(), DIR_NAME), String.format(Locale.US,
+                "%s_v%d_%08x_%ddpi_%dpx_%d.png", font, BuildConfig.VERSION_CODE,
+                EmojiCodes.checksum(catalog.getCodes()), densityDpi, sheetCellSize, sheet));
+    }
+
+    private int sheetWidth(int cells) {
+        return Math.min(cells, columns) * sheetCellSize;
+    }
+
+    private int sheetHeight(int cells) {
+        return ((cells + columns - 1) / columns) * sheetCellSize;
+    }
+}
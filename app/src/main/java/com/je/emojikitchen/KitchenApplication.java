@@ -0,0 +1,13 @@
+package com.je.emojikitchen;
+
+import android.app.Application;
+
+public class KitchenApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Load the grid glyphs while the first activity is still being created. The font is
+        // only parsed if the atlas has not been rendered for this configuration yet.
+        GlyphAtlas.getInstance(this).preload();
+    }
+}
@@ -5,28 +5,24 @@ import android.content.*;
 import android.content.pm.PackageManager;
 import android.graphics.*;
 import android.graphics.drawable.*;
-import android.media.MediaScannerConnection;
 import android.os.*;
 import android.view.*;
 import android.widget.*;
 import android.net.Uri;
-import android.util.Log;
 
 import androidx.appcompat.app.*;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.*;
-import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.slider.RangeSlider;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.appbar.MaterialToolbar;
+import com.je.emojikitchen.core.ImageSizes;
+import com.je.emojikitchen.core.Metrics;
 
 import java.io.*;
 import java.util.*;
@@ -34,19 +30,16 @@ import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
     private static final String PREFS = "EmojiKitchenPrefs";
-    private static final String API = "https://emk.vercel.app/s/%s_%s?size=%d";
     private static final int PERMISSION_CODE = 123;
+    private static final int IMPORT_PACK_CODE = 124;
     private static final int DEFAULT_SIZE = 128;
-    private static final int MIN_SIZE = 16;
-    private static final int MAX_SIZE = 512;
-    private static final int SIZE_STEP = 16;
     private static final int GRID_COLUMNS = 3;
     private static final int UPDATE_DELAY = 200;
     private static final int VIBRATE_DELAY = 150;
     private static final int POPUP_OFFSET_Y = 60;
     private static final String IMAGE_MIME_TYPE = "image/png";
-    private static final int[] SIZES = {32, 64, 128, 256, 512};
     private static final int DEFAULT_SIZE_INDEX = 2;
+    private static final int PREFETCH_MAX_SIZE = 128;
 
     private RecyclerView grid1, grid2;
     private EmojiRecyclerAdapter adapter1, adapter2;
@@ -56,8 +49,24 @@ public class MainActivity extends AppCompatActivity {
     private ImageButton customSizeButton1, customSizeButton2;
     private View loading;
     private String emoji1, emoji2;
-    private String[] emojis;
+    private EmojiCatalog catalog;
     private EmojiCache cache;
+    private FetchScheduler scheduler;
+    private FetchScheduler.Ticket currentFetch;
+    private ExportPipeline exporter;
+    private PackImporter packImporter;
+    private AlertDialog importDialog;
+    private EmojiPrefetcher prefetcher;
+    private ComboIndex comboIndex;
+    private NegativeCache negativeCache;
+    private BitmapHandle displayed;
+    // Request whose final image is on screen, a preview never replaces it.
+    private int finalImageRequestId = -1;
+    private GlyphAtlas glyphAtlas;
+    private final GlyphAtlas.Callback atlasCallback = atlas -> {
+        adapter1.setAtlas(atlas);
+        adapter2.setAtlas(atlas);
+    };
     private int currentRequestSize = 0;
     private long lastVibrate = 0;
     private Handler updateHandler = new Handler(Looper.getMainLooper());
@@ -69,26 +78,31 @@ public class MainActivity extends AppCompatActivity {
     private PopupWindow sizePopup;
     private TextView sizePopupText;
     private int customSize = -1;
+    // Opt-in from the menu: download only the largest size and resample every other size
+    // from it on the device. Off by default, a 512px master costs several times the bytes of
+    // the size on screen.
+    private boolean fetchMaster;
     private LinearLayout sliderRow, customSizeRow;
     private Button resetSizeButton;
     private TextView customSizeInUseText;
 
     @Override 
     protected void onCreate(Bundle saved) {
+        if (BuildConfig.DEBUG) {
+            enableStrictMode();
+        }
         super.onCreate(saved);
         setContentView(R.layout.activity_main);
 
         MaterialToolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);  // This makes it work as ActionBar
 
-        cleanShareCache();
-
         if (saved != null) {
             emoji1 = saved.getString("emoji1");
             emoji2 = saved.getString("emoji2");
         }
         
-        emojis = getResources().getStringArray(R.array.emoji_codes);
+        catalog = EmojiCatalog.getInstance(this);
         grid1 = findViewById(R.id.emojiGrid1);
         grid2 = findViewById(R.id.emojiGrid2);
         resultImage = findViewById(R.id.resultImage);
@@ -100,6 +114,15 @@ public class MainActivity extends AppCompatActivity {
         customSizeButton2 = findViewById(R.id.customSizeButton2);
         loading = findViewById(R.id.loadingIndicator);
         cache = EmojiCache.getInstance(this);
+        scheduler = FetchScheduler.getInstance(this);
+        comboIndex = ComboIndex.getInstance(this);
+        negativeCache = NegativeCache.getInstance(this);
+        prefetcher = new EmojiPrefetcher(scheduler, cache, comboIndex, negativeCache);
+        exporter = ExportPipeline.getInstance(this);
+        cache.getIoExecutor().execute(() -> {
+            comboIndex.load();
+            runOnUiThread(this::updatePartnerAvailability);
+        });
 
         sliderRow = findViewById(R.id.sliderRow);
         customSizeRow = findViewById(R.id.customSizeRow);
@@ -114,34 +137,75 @@ public class MainActivity extends AppCompatActivity {
         initializeResetSizeButton();
         updateSizeControls();
         restoreState();
+        // An import started before a configuration change keeps running, show it again.
+        packImporter = PackImporter.getRunning();
+        if (packImporter != null) {
+            showImportProgress();
+        }
     }
 
-    private void cleanShareCache() {
-        File tempDir = new File(getCacheDir(), "emoji_cache");
-        if (tempDir.exists() && tempDir.isDirectory()) {
-            File[] files = tempDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    String name = file.getName();
-                    if (name.endsWith("_tmp_share.png")) {
-                        file.delete();
-                    }
-                }
-            }
-        }
+    private void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog()
+                .build());
     }
 
+
     private void initializeGrids() {
         GridLayoutManager layoutManager1 = new GridLayoutManager(this, GRID_COLUMNS);
         GridLayoutManager layoutManager2 = new GridLayoutManager(this, GRID_COLUMNS);
         grid1.setLayoutManager(layoutManager1);
         grid2.setLayoutManager(layoutManager2);
 
-        adapter1 = new EmojiRecyclerAdapter(this, emojis, position -> onEmojiSelected(position, true));
-        adapter2 = new EmojiRecyclerAdapter(this, emojis, position -> onEmojiSelected(position, false));
+        adapter1 = new EmojiRecyclerAdapter(this, catalog, position -> onEmojiSelected(position, true));
+        adapter2 = new EmojiRecyclerAdapter(this, catalog, position -> onEmojiSelected(position, false));
         
         grid1.setAdapter(adapter1);
         grid2.setAdapter(adapter2);
+        glyphAtlas = GlyphAtlas.getInstance(this);
+
+        grid2.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisiblePartners();
+                } else {
+                    prefetcher.cancel();
+                }
+            }
+        });
+    }
+
+    /** Dims the second-grid cells that cannot be combined with emoji1. */
+    private void updatePartnerAvailability() {
+        if (isFinishing() || adapter2 == null) return;
+        int anchor = emoji1 == null ? -1 : comboIndex.positionOf(emoji1);
+        if (anchor < 0 || !comboIndex.isLoaded()) {
+            adapter2.setAvailability(null);
+            return;
+        }
+        adapter2.setAvailability(position -> comboIndex.mayExist(anchor, position));
+    }
+
+    /**
+     * Warms the disk cache with emoji1 combined with every cell currently visible in the
+     * second grid, so the next tap there is usually a cache hit.
+     */
+    private void prefetchVisiblePartners() {
+        if (emoji1 == null) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) grid2.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+
+        List<String> partners = new ArrayList<>(last - first + 1);
+        for (int i = first; i <= last; i++) {
+            partners.add(catalog.getCode(i));
+        }
+        prefetcher.prefetch(emoji1, partners, Math.min(getSizeFromSlider(), PREFETCH_MAX_SIZE));
     }
 
     private void initializeSizePopup() {
@@ -156,29 +220,10 @@ public class MainActivity extends AppCompatActivity {
         );
     }
 
-    private int normalizeSize(int value) {
-        return Math.max(MIN_SIZE, Math.min(MAX_SIZE, (value / SIZE_STEP) * SIZE_STEP));
-    }
-
-    private int getSliderIndexForSize(int size) {
-        int index = 0;
-        int minDiff = Math.abs(SIZES[0] - size);
-        for (int i = 1; i < SIZES.length; i++) {
-            int diff = Math.abs(SIZES[i] - size);
-            if (diff < minDiff) {
-                minDiff = diff;
-                index = i;
-            }
-        }
-        return index;
-    }
-
     private int getSizeFromSlider() {
         if (customSize > 0) return customSize;
         float value = slider.getValues().get(0);
-        int index = Math.round(value);
-        index = Math.max(0, Math.min(index, SIZES.length - 1));
-        return SIZES[index];
+        return ImageSizes.sliderSize(Math.round(value));
     }
 
     private void updateResult() {
@@ -186,41 +231,89 @@ public class MainActivity extends AppCompatActivity {
         int reqSize = pendingRequestSize > 0 ? pendingRequestSize : getSizeFromSlider();
         pendingRequestSize = 0;
 
-        Bitmap cached = cache.loadFromCache(emoji1, emoji2, -1);
-        if (cached != null) {
-            int cachedSize = Math.max(cached.getWidth(), cached.getHeight());
-            if (reqSize <= cachedSize) {
-                Bitmap toShow = (reqSize == cachedSize) ? cached
-                        : Bitmap.createScaledBitmap(cached, reqSize, reqSize, true);
-                setImage(toShow);
+        final int requestId = ++currentRequestId;
+        // A download of the same variant is kept so the coming request can join it.
+        if (currentFetch != null && !currentFetch.isFor(emoji1, emoji2, fetchSizeFor(reqSize))) {
+            cancelCurrentFetch();
+        }
+        if (!comboIndex.mayExist(emoji1, emoji2) || negativeCache.isKnownMissing(emoji1, emoji2)) {
+            handleEmojiNotFound();
+            return;
+        }
+        cache.load(emoji1, emoji2, reqSize, cached -> {
+            if (requestId != currentRequestId) {
+                if (cached != null) cached.release();
                 return;
             }
-        }
-        currentRequestSize = reqSize;
-        loadFromNetwork(reqSize);
+            if (cached != null) {
+                setImage(cached);
+                return;
+            }
+            currentRequestSize = reqSize;
+            loadFromNetwork(requestId, reqSize);
+            loadPreview(requestId, reqSize);
+        });
     }
 
-    private void loadFromNetwork(int size) {
+    /**
+     * Shows the largest smaller variant in the cache, stretched to {@code size}, until the
+     * download of the {@code size} variant lands.
+     */
+    private void loadPreview(final int requestId, int size) {
+        cache.loadPreview(emoji1, emoji2, size, preview -> {
+            if (preview == null) return;
+            if (requestId != currentRequestId || finalImageRequestId == requestId) {
+                preview.release();
+                return;
+            }
+            setPreview(preview, size);
+        });
+    }
+
+    private void loadFromNetwork(final int requestId, int size) {
         cancelPendingVibrations();
-        final int requestId = ++currentRequestId;
-        String url = String.format(Locale.US, API, emoji1, emoji2, size);
+        final String first = emoji1, second = emoji2;
         showLoading();
-        new okhttp3.OkHttpClient().newCall(new okhttp3.Request.Builder()
-            .url(url)
-            .addHeader("User-Agent", "EmojiKitchen/1.4 (+https://github.com/jeeneo/kitchen)")
-            .addHeader("Accept", "image/png")
-            .build())
-        .enqueue(new okhttp3.Callback() {
+        FetchScheduler.Ticket superseded = currentFetch;
+        currentFetch = scheduler.fetch(first, second, fetchSizeFor(size), FetchScheduler.Priority.VISIBLE,
+                new FetchScheduler.Listener() {
+            @Override
+            public void onStored() {
+                handleNetworkResult(requestId, first, second, size);
+            }
+
             @Override
-            public void onFailure(okhttp3.Call call, IOException e) {
-                handleNetworkError(requestId, e.getMessage());
+            public void onNotFound() {
+                runOnUiThread(() -> {
+                    if (requestId == currentRequestId) {
+                        handleEmojiNotFound();
+                    }
+                });
             }
 
             @Override
-            public void onResponse(okhttp3.Call call, okhttp3.Response response) {
-                handleNetworkResponse(requestId, response);
+            public void onError(String message) {
+                handleNetworkError(requestId, message);
             }
         });
+        if (superseded != null) {
+            superseded.cancel();
+        }
+    }
+
+    /**
+     * Size to download for showing {@code size}. The cache serves {@code size} from any
+     * larger variant, so in master mode one download covers every size of a combination.
+     */
+    private int fetchSizeFor(int size) {
+        return fetchMaster ? ImageSizes.MAX_SIZE : size;
+    }
+
+    private void cancelCurrentFetch() {
+        if (currentFetch != null) {
+            currentFetch.cancel();
+            currentFetch = null;
+        }
     }
 
     private void handleNetworkError(final int requestId, String error) {
@@ -232,17 +325,23 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void handleNetworkResponse(final int requestId, okhttp3.Response response) {
+    private void handleNetworkResult(final int requestId, String first, String second, int size) {
         runOnUiThread(() -> {
             if (requestId != currentRequestId) return;
-            
-            if (response.code() == 404 || "404".equals(response.header("status"))) {
-                handleEmojiNotFound();
-            } else if (response.isSuccessful()) {
-                loadImageWithGlide(requestId, response.request().url().toString());
-            } else {
-                handleNetworkError(requestId, "HTTP " + response.code());
-            }
+
+            cache.load(first, second, size, bmp -> {
+                if (requestId != currentRequestId) {
+                    if (bmp != null) bmp.release();
+                    return;
+                }
+                hideLoading();
+                if (bmp == null) {
+                    Toast.makeText(this, R.string.error_load_failed, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                setImage(bmp);
+                vibrate(HapticFeedbackConstants.VIRTUAL_KEY);
+            });
         });
     }
 
@@ -260,6 +359,25 @@ public class MainActivity extends AppCompatActivity {
         copyUrlBtn.setEnabled(true);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Also brings the sheets back after onTrimMemory dropped them.
+        glyphAtlas.whenReady(atlasCallback);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // UI_HIDDEN comes with every app switch and share sheet, dropping the sheets then
+        // would leave the grids blank each time the user comes back.
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            adapter1.setAtlas(null);
+            adapter2.setAtlas(null);
+            glyphAtlas.release();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -271,11 +389,26 @@ public class MainActivity extends AppCompatActivity {
             sizePopup.dismiss();
         }
         cancelPendingVibrations();
+        prefetcher.cancel();
+        cancelCurrentFetch();
+        if (importDialog != null) {
+            importDialog.dismiss();
+        }
+        if (packImporter != null) {
+            if (isChangingConfigurations()) {
+                packImporter.detach();
+            } else {
+                packImporter.cancel();
+            }
+        }
+        if (glyphAtlas != null) {
+            glyphAtlas.removeCallback(atlasCallback);
+        }
         updateHandler.removeCallbacksAndMessages(null);
         vibrateHandler.removeCallbacksAndMessages(null);
         
         if (resultImage != null) {
-            resultImage.setImageDrawable(null);
+            clearImage();
         }
     }
 
@@ -284,18 +417,22 @@ public class MainActivity extends AppCompatActivity {
         RecyclerView grid = first ? grid1 : grid2;
         grid.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
         if (first) { 
-            emoji1 = emojis[pos]; 
+            emoji1 = catalog.getCode(pos); 
             adapter1.setSelectedPosition(pos);
             smoothScrollToCenter(grid1, pos);
         } else { 
-            emoji2 = emojis[pos]; 
+            emoji2 = catalog.getCode(pos); 
             adapter2.setSelectedPosition(pos);
             smoothScrollToCenter(grid2, pos);
         }
         saveState();
         currentRequestSize = 0;
-        resultImage.setImageDrawable(null);
+        clearImage();
         updateResult();
+        if (first) {
+            updatePartnerAvailability();
+            prefetchVisiblePartners();
+        }
     }
 
     private void smoothScrollToCenter(RecyclerView recyclerView, int position) {
@@ -313,51 +450,43 @@ public class MainActivity extends AppCompatActivity {
         resultImage.setLayoutParams(params);
     }
 
-    private void loadImageWithGlide(int requestId, String url) {
-        Glide.with(this)
-            .asBitmap()
-            .load(url)
-            .into(new CustomTarget<Bitmap>() {
-                public void onResourceReady(Bitmap bmp, Transition<? super Bitmap> t) {
-                    if (bmp != null && requestId == currentRequestId) {
-                        Bitmap cached = cache.loadFromCache(emoji1, emoji2, -1);
-                        int bmpSize = Math.max(bmp.getWidth(), bmp.getHeight());
-                        int cachedSize = cached != null ? Math.max(cached.getWidth(), cached.getHeight()) : -1;
-                        if (cached == null || bmpSize > cachedSize) {
-                            cache.saveToCache(emoji1, emoji2, bmp);
-                        }
-                        setImage(bmp);
-                        hideLoading();
-                        vibrate(HapticFeedbackConstants.VIRTUAL_KEY);
-                    }
-                }
-                public void onLoadCleared(Drawable placeholder) { 
-                    hideLoading(); 
-                }
-                public void onLoadFailed(Drawable e) {
-                    if (requestId == currentRequestId) {
-                        hideLoading();
-                        Toast.makeText(MainActivity.this, R.string.error_load_failed, Toast.LENGTH_SHORT).show();
-                    }
-                }
-            });
-    }
-
-    private void setImage(Bitmap bmp) {
-        if (bmp != null) {
-            resultImage.setImageBitmap(bmp);
+    private void setImage(BitmapHandle handle) {
+        if (handle != null) {
+            resultImage.setImageBitmap(handle.getBitmap());
+            // The old bitmap may go back to the pool only once the view stopped drawing it.
+            if (displayed != null) displayed.release();
+            displayed = handle;
+            finalImageRequestId = currentRequestId;
             updateButtonStates(true);
             hideLoading();
         }
     }
 
+    /** Like {@link #setImage} for a stand-in, which keeps the spinner going on top. */
+    private void setPreview(BitmapHandle handle, int size) {
+        resultImage.setImageDrawable(new PlaceholderDrawable(handle.getBitmap(), size));
+        if (displayed != null) displayed.release();
+        displayed = handle;
+    }
+
+    private void clearImage() {
+        resultImage.setImageDrawable(null);
+        if (displayed != null) {
+            displayed.release();
+            displayed = null;
+        }
+    }
+
+    /**
+     * Spins on top of whatever is shown. The current image stays up until a preview or the
+     * final image replaces it, so changing the size never blanks the result.
+     */
     private void showLoading() {
-        loading.setVisibility(View.VISIBLE); 
-        resultImage.setVisibility(View.INVISIBLE);
+        loading.setVisibility(View.VISIBLE);
     }
 
     private void hideLoading() {
-        loading.setVisibility(View.GONE); resultImage.setVisibility(View.VISIBLE);
+        loading.setVisibility(View.GONE);
     }
 
     private void doubleVibrate() {
@@ -376,7 +505,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void checkPermissionsAndSave() {
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.Q &&
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q &&
             ContextCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE)
                 != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this,
@@ -386,121 +515,51 @@ public class MainActivity extends AppCompatActivity {
 
     private void shareImage() {
         if (emoji1 == null || emoji2 == null) return;
-
-        String key = String.format("emoji_%s_%s", emoji1, emoji2);
-        File cacheFile = new File(getCacheDir(), "emoji_cache/" + key + ".png");
-        int requestedSize = getSizeFromSlider();
-
-        if (!cacheFile.exists()) {
-            Log.e("MainActivity", "cache file does not exist: " + cacheFile.getAbsolutePath());
-            Toast.makeText(this, R.string.error_image_not_available, Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        try {
-            Bitmap cached = cache.loadFromCache(emoji1, emoji2, -1);
-            if (cached == null) {
-                Toast.makeText(this, R.string.error_image_not_available, Toast.LENGTH_SHORT).show();
-                return;
-            }
-            int cachedSize = Math.max(cached.getWidth(), cached.getHeight());
-            File fileToShare;
-            boolean isTemp = false;
-            if (requestedSize == cachedSize) {
-                fileToShare = cacheFile;
-            } else {
-                Bitmap resized = Bitmap.createScaledBitmap(cached, requestedSize, requestedSize, true);
-                fileToShare = new File(getCacheDir(), "emoji_cache/" + key + "_tmp_share.png");
-                try (FileOutputStream out = new FileOutputStream(fileToShare)) {
-                    resized.compress(Bitmap.CompressFormat.PNG, 100, out);
-                }
-                isTemp = true;
+        exporter.share(emoji1, emoji2, getSizeFromSlider(), new ExportPipeline.Callback() {
+            @Override
+            public void onExported(Uri uri) {
+                startShareIntent(uri);
             }
 
-            String authority = getPackageName() + ".fileprovider";
-            Log.d("MainActivity", "FileProvider authority: " + authority);
-            Log.d("MainActivity", "File to share path: " + fileToShare.getAbsolutePath());
-
-            Uri uri = FileProvider.getUriForFile(this, authority, fileToShare);
-            if (uri == null) {
-                throw new IllegalArgumentException("Failed to create content URI");
+            @Override
+            public void onError(String message) {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
             }
+        });
+    }
 
-            Intent intent = new Intent(Intent.ACTION_SEND);
-            intent.setType(IMAGE_MIME_TYPE);
-            intent.putExtra(Intent.EXTRA_STREAM, uri);
-            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    private void startShareIntent(Uri uri) {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(IMAGE_MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
-            if (intent.resolveActivity(getPackageManager()) != null) {
-                startActivity(Intent.createChooser(intent, getString(R.string.share_chooser_title)));
-            } else {
-                Toast.makeText(this, R.string.error_no_share_apps, Toast.LENGTH_SHORT).show();
-                if (isTemp) fileToShare.delete();
-                return;
-            }
-
-            if (isTemp) {
-                new Handler(Looper.getMainLooper()).postDelayed(() -> fileToShare.delete(), 3000);
-            }
-        } catch (Exception e) {
-            Log.e("MainActivity", "Failed to share image", e);
-            Toast.makeText(this, getString(R.string.error_share_failed, e.getMessage()), Toast.LENGTH_LONG).show();
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivity(Intent.createChooser(intent, getString(R.string.share_chooser_title)));
+        } else {
+            Toast.makeText(this, R.string.error_no_share_apps, Toast.LENGTH_SHORT).show();
         }
     }
 
     private void saveToGallery() {
         if (emoji1 == null || emoji2 == null) return;
-
-        String key = String.format("emoji_%s_%s", emoji1, emoji2);
-        File cacheFile = new File(getCacheDir(), "emoji_cache/" + key + ".png");
-        int requestedSize = getSizeFromSlider();
-
-        if (!cacheFile.exists()) {
-            Toast.makeText(this, R.string.error_image_not_available, Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "EmojiKitchen");
-        dir.mkdirs();
-        File destFile = new File(dir, key + ".png");
-
-        try {
-            Bitmap cached = cache.loadFromCache(emoji1, emoji2, -1);
-            if (cached == null) {
-                Toast.makeText(this, R.string.error_image_not_available, Toast.LENGTH_SHORT).show();
-                return;
-            }
-            int cachedSize = Math.max(cached.getWidth(), cached.getHeight());
-            if (requestedSize == cachedSize) {
-
-                try (FileInputStream in = new FileInputStream(cacheFile);
-                     FileOutputStream out = new FileOutputStream(destFile)) {
-                    byte[] buffer = new byte[8192];
-                    int read;
-                    while ((read = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, read);
-                    }
-                }
-            } else {
-                Bitmap resized = Bitmap.createScaledBitmap(cached, requestedSize, requestedSize, true);
-                try (FileOutputStream out = new FileOutputStream(destFile)) {
-                    resized.compress(Bitmap.CompressFormat.PNG, 100, out);
-                }
+        exporter.saveToGallery(emoji1, emoji2, getSizeFromSlider(), new ExportPipeline.Callback() {
+            @Override
+            public void onExported(Uri uri) {
+                Toast.makeText(MainActivity.this, R.string.success_saved_gallery, Toast.LENGTH_SHORT).show();
             }
 
-            MediaScannerConnection.scanFile(this, new String[]{destFile.toString()}, null,
-                (p, uri) -> runOnUiThread(() -> Toast.makeText(this, R.string.success_saved_gallery, Toast.LENGTH_SHORT).show()));
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, R.string.error_save_failed, Toast.LENGTH_SHORT).show();
-        }
+            @Override
+            public void onError(String message) {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void copyUrlToClipboard() {
         if (emoji1 == null || emoji2 == null) return;
         int size = getSizeFromSlider();
-        String url = String.format(API, emoji1, emoji2, size);
+        String url = EmojiClient.buildUrl(emoji1, emoji2, size);
         ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
         ClipData clip = ClipData.newPlainText("Emoji Kitchen URL", url);
         clipboard.setPrimaryClip(clip);
@@ -514,11 +573,12 @@ public class MainActivity extends AppCompatActivity {
         float sliderValue = p.getFloat("sliderValue", DEFAULT_SIZE_INDEX);
         slider.setValues(sliderValue);
         customSize = p.getInt("customSize", -1);
+        fetchMaster = p.getBoolean("fetchMaster", false);
 
         updateSizeControls();
 
-        int i1 = emoji1 == null ? -1 : Arrays.asList(emojis).indexOf(emoji1);
-        int i2 = emoji2 == null ? -1 : Arrays.asList(emojis).indexOf(emoji2);
+        int i1 = emoji1 == null ? -1 : catalog.positionOf(emoji1);
+        int i2 = emoji2 == null ? -1 : catalog.positionOf(emoji2);
 
         if (i1 >= 0) {
             adapter1.setSelectedPosition(i1);
@@ -528,6 +588,8 @@ public class MainActivity extends AppCompatActivity {
             adapter2.setSelectedPosition(i2);
             grid2.post(() -> smoothScrollToCenter(grid2, i2));
         }
+        updatePartnerAvailability();
+        grid2.post(this::prefetchVisiblePartners);
 
         if (emoji1 != null && emoji2 != null) {
             shareBtn.setEnabled(true);
@@ -535,21 +597,7 @@ public class MainActivity extends AppCompatActivity {
             slider.setEnabled(true);
             copyUrlBtn.setEnabled(true);
 
-            int size = getSizeFromSlider();
-            Bitmap cached = cache.loadFromCache(emoji1, emoji2, -1);
-            if (cached != null) {
-                int cachedSize = Math.max(cached.getWidth(), cached.getHeight());
-                Bitmap toShow = (size <= cachedSize)
-                        ? (size == cachedSize ? cached : Bitmap.createScaledBitmap(cached, size, size, true))
-                        : null;
-                if (toShow != null) {
-                    setImage(toShow);
-                } else {
-                    updateResult();
-                }
-            } else {
-                updateResult();
-            }
+            updateResult();
         }
     }
 
@@ -604,6 +652,7 @@ public class MainActivity extends AppCompatActivity {
         if (emoji2 != null) e.putString("selectedEmoji2", emoji2);
         e.putFloat("sliderValue", slider.getValues().get(0));
         e.putInt("customSize", customSize);
+        e.putBoolean("fetchMaster", fetchMaster);
         e.putInt("scrollPos1", ((LinearLayoutManager)grid1.getLayoutManager()).findFirstVisibleItemPosition());
         e.putInt("scrollPos2", ((LinearLayoutManager)grid2.getLayoutManager()).findFirstVisibleItemPosition());
         e.apply();
@@ -618,6 +667,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+        menu.findItem(R.id.action_fetch_master).setChecked(fetchMaster);
         return true;
     }
 
@@ -628,9 +679,19 @@ public class MainActivity extends AppCompatActivity {
             showAboutDialog();
             return true;
         } else if (id == R.id.action_clear_cache) {
-            cache.clearCache();
-            cleanShareCache();
-            Toast.makeText(this, "Cache cleared", Toast.LENGTH_SHORT).show();
+            negativeCache.clear();
+            cache.clear(() -> Toast.makeText(this, "Cache cleared", Toast.LENGTH_SHORT).show());
+            return true;
+        } else if (id == R.id.action_import_pack) {
+            pickPack();
+            return true;
+        } else if (id == R.id.action_fetch_master) {
+            fetchMaster = !item.isChecked();
+            item.setChecked(fetchMaster);
+            saveState();
+            return true;
+        } else if (id == R.id.action_metrics) {
+            showMetricsDialog();
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -644,6 +705,129 @@ public class MainActivity extends AppCompatActivity {
             .show();
     }
 
+    private void pickPack() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        // Providers disagree on the type of a zip.
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{
+                "application/zip", "application/x-zip-compressed", "application/octet-stream"});
+        startActivityForResult(intent, IMPORT_PACK_CODE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == IMPORT_PACK_CODE && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            importPack(data.getData());
+        }
+    }
+
+    private void importPack(Uri uri) {
+        if (packImporter != null) {
+            packImporter.cancel();
+        }
+        packImporter = new PackImporter(this, uri);
+        packImporter.start();
+        showImportProgress();
+    }
+
+    private void showImportProgress() {
+        View view = getLayoutInflater().inflate(R.layout.dialog_import, null);
+        ProgressBar progress = view.findViewById(R.id.importProgress);
+        TextView text = view.findViewById(R.id.importText);
+        AlertDialog dialog = importDialog = new MaterialAlertDialogBuilder(this)
+            .setTitle(R.string.import_pack_title)
+            .setView(view)
+            .setCancelable(false)
+            .setNegativeButton(R.string.cancel, (d, which) -> {
+                if (packImporter != null) {
+                    packImporter.cancel();
+                    packImporter = null;
+                }
+            })
+            .show();
+        packImporter.attach(new PackImporter.Listener() {
+            @Override
+            public void onProgress(long read, long total, int imported) {
+                if (total > 0) {
+                    progress.setIndeterminate(false);
+                    progress.setProgress((int) (read * progress.getMax() / total));
+                }
+                text.setText(getString(R.string.import_progress, imported));
+            }
+
+            @Override
+            public void onFinished(int imported, int skipped) {
+                packImporter = null;
+                importDialog = null;
+                dialog.dismiss();
+                Toast.makeText(MainActivity.this, getString(R.string.success_pack_imported, imported, skipped),
+                        Toast.LENGTH_LONG).show();
+                // The combination on screen may have been in the pack.
+                updateResult();
+            }
+
+            @Override
+            public void onError(String message) {
+                packImporter = null;
+                importDialog = null;
+                dialog.dismiss();
+                Toast.makeText(MainActivity.this, getString(R.string.error_import_failed, message),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void showMetricsDialog() {
+        Metrics metrics = Metrics.getInstance();
+        // Gauges read the cache indexes, which may be busy loading from disk.
+        cache.getIoExecutor().execute(() -> {
+            String text = metrics.dumpText();
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                View view = getLayoutInflater().inflate(R.layout.dialog_metrics, null);
+                TextView metricsText = view.findViewById(R.id.metricsText);
+                metricsText.setText(text);
+                new MaterialAlertDialogBuilder(this)
+                    .setTitle(R.string.metrics_title)
+                    .setView(view)
+                    .setPositiveButton(R.string.ok, null)
+                    .setNeutralButton(R.string.reset, (dialog, which) -> metrics.reset())
+                    .setNegativeButton(R.string.metrics_copy_json, (dialog, which) -> copyMetricsJson())
+                    .show();
+            });
+        });
+    }
+
+    private void copyMetricsJson() {
+        cache.getIoExecutor().execute(() -> {
+            String json = Metrics.getInstance().dumpJson();
+            runOnUiThread(() -> {
+                ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                clipboard.setPrimaryClip(ClipData.newPlainText("Emoji Kitchen metrics", json));
+                Toast.makeText(this, R.string.success_metrics_copied, Toast.LENGTH_SHORT).show();
+            });
+        });
+    }
+
+    /**
+     * Appends the metrics to {@code adb shell dumpsys activity <package>}, as JSON when
+     * {@code --json} is passed after the package name.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics metrics = Metrics.getInstance();
+        writer.print(prefix);
+        writer.println("Metrics:");
+        if (args != null && Arrays.asList(args).contains("--json")) {
+            writer.println(metrics.dumpJson());
+        } else {
+            writer.print(metrics.dumpText());
+        }
+    }
+
     private void vibrate(int feedbackConstant) {
         if (resultImage != null) {
             resultImage.performHapticFeedback(feedbackConstant);
@@ -651,7 +835,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void showSizePopup(SeekBar sb, int progress) {
-        int size = normalizeSize(progress);
+        int size = ImageSizes.normalize(progress);
         sizePopupText.setText(getString(R.string.size_pixels, size));
         if (!sizePopup.isShowing()) {
             int[] location = new int[2];
@@ -675,14 +859,12 @@ public class MainActivity extends AppCompatActivity {
         slider.setValues((float) DEFAULT_SIZE_INDEX);
         slider.setStepSize(1f);
         slider.setLabelFormatter(value -> {
-            int index = Math.max(0, Math.min(Math.round(value), SIZES.length - 1));
-            return SIZES[index] + "px";
+            return ImageSizes.sliderSize(Math.round(value)) + "px";
         });
 
         slider.addOnChangeListener((slider, value, fromUser) -> {
             if (fromUser) {
-                int index = Math.max(0, Math.min(Math.round(value), SIZES.length - 1));
-                pendingRequestSize = SIZES[index];
+                pendingRequestSize = ImageSizes.sliderSize(Math.round(value));
                 customSize = -1;
                 updateSizeControls();
                 updateHandler.removeCallbacks(updateRunnable);
@@ -0,0 +1,289 @@
+package com.je.emojikitchen;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import com.je.emojikitchen.core.PackedKeys;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded bitmap cache keyed by {@link PackedKeys}, whose reads never take a lock.
+ * Entries sit in an open-addressing table that readers probe directly; writers serialize
+ * on one lock, mark removed slots with a tombstone and publish a fresh table when the
+ * old one fills up. Each hit stamps the entry with a tick from a shared counter, and once
+ * the cache grows past its budget the writer that noticed it evicts the least recently
+ * stamped entries in one batch. Eviction is skipped rather than waited for if another
+ * thread holds the lock.
+ *
+ * <p>The cache owns one reference to every handle it stores and releases it on removal or
+ * eviction.
+ */
+class MemoryCache {
+    // Evicting down to a little under the budget keeps a burst of puts from sorting every time.
+    private static final float EVICT_TO_FRACTION = 0.9f;
+    private static final int MIN_CAPACITY = 64;
+
+    private static final class Entry {
+        final long key;
+        final BitmapHandle handle;
+        final int size;
+        volatile long lastAccess;
+
+        Entry(long key, BitmapHandle handle, int size, long lastAccess) {
+            this.key = key;
+            this.handle = handle;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    // Left in removed slots so probes for keys further along the run keep going.
+    private static final Entry TOMBSTONE = new Entry(PackedKeys.NO_KEY, null, 0, 0);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long maxSize;
+    // Replaced wholesale on rehash, so a reader always probes one consistent table.
+    private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(MIN_CAPACITY);
+    private volatile long size;
+    // Guarded by lock.
+    private int count;
+    private int used;
+
+    MemoryCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** Returns a handle retained for the caller, or null on a miss. */
+    @Nullable
+    BitmapHandle get(long key) {
+        AtomicReferenceArray<Entry> table = this.table;
+        int mask = table.length() - 1;
+        for (int slot = PackedKeys.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            Entry entry = table.get(slot);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.key == key && entry != TOMBSTONE) {
+                if (!entry.handle.tryRetain()) {
+                    return null;
+                }
+                entry.lastAccess = clock.incrementAndGet();
+                return entry.handle;
+            }
+        }
+    }
+
+    /** Stores the handle, taking a reference of its own. The caller keeps its reference. */
+    void put(long key, BitmapHandle handle) {
+        if (!handle.tryRetain()) {
+            return;
+        }
+        Entry entry = new Entry(key, handle, sizeOf(handle.getBitmap()), clock.incrementAndGet());
+        Entry previous;
+        lock.lock();
+        try {
+            AtomicReferenceArray<Entry> table = this.table;
+            int mask = table.length() - 1;
+            int free = -1;
+            int slot = PackedKeys.hash(key) & mask;
+            for (; ; slot = (slot + 1) & mask) {
+                previous = table.get(slot);
+                if (previous == null || (previous.key == key && previous != TOMBSTONE)) {
+                    break;
+                }
+                if (previous == TOMBSTONE && free < 0) {
+                    free = slot;
+                }
+            }
+            if (previous != null) {
+                table.set(slot, entry);
+                size += entry.size - previous.size;
+            } else {
+                if (free >= 0) {
+                    slot = free;
+                } else {
+                    used++;
+                }
+                table.set(slot, entry);
+                count++;
+                size += entry.size;
+                if (used * 4 > table.length() * 3) {
+                    rehash();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (previous != null) {
+            previous.handle.release();
+        }
+        if (size > maxSize) {
+            evict();
+        }
+    }
+
+    void remove(long key) {
+        Entry previous;
+        lock.lock();
+        try {
+            previous = removeLocked(key);
+        } finally {
+            lock.unlock();
+        }
+        if (previous != null) {
+            previous.handle.release();
+        }
+    }
+
+    void evictAll() {
+        AtomicReferenceArray<Entry> cleared;
+        lock.lock();
+        try {
+            cleared = table;
+            table = new AtomicReferenceArray<>(MIN_CAPACITY);
+            count = 0;
+            used = 0;
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < cleared.length(); i++) {
+            Entry entry = cleared.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                entry.handle.release();
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Evicts least recently used entries until at most {@code targetSize} bytes remain,
+     * waiting for the lock if needed. Later puts may grow the cache to its budget again.
+     */
+    void trimToSize(long targetSize) {
+        Entry[] evicted;
+        lock.lock();
+        try {
+            evicted = evictLocked(targetSize);
+        } finally {
+            lock.unlock();
+        }
+        release(evicted);
+    }
+
+    private void evict() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        Entry[] evicted;
+        try {
+            evicted = evictLocked((long) (maxSize * EVICT_TO_FRACTION));
+        } finally {
+            lock.unlock();
+        }
+        release(evicted);
+    }
+
+    /**
+     * Removes the least recently used entries until at most {@code target} bytes remain
+     * and returns them. Must be called with the lock held.
+     */
+    private Entry[] evictLocked(long target) {
+        AtomicReferenceArray<Entry> table = this.table;
+        Entry[] snapshot = new Entry[count];
+        // Readers keep stamping entries without the lock, so sort on copies of the stamps.
+        // Comparing the live fields could break the sort's contract and make it throw.
+        final long[] lastAccess = new long[count];
+        Integer[] order = new Integer[count];
+        int n = 0;
+        for (int i = 0; i < table.length(); i++) {
+            Entry entry = table.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                snapshot[n] = entry;
+                lastAccess[n] = entry.lastAccess;
+                order[n] = n;
+                n++;
+            }
+        }
+        // Comparator.comparingLong needs API 24.
+        Arrays.sort(order, 0, n, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastAccess[a], lastAccess[b]);
+            }
+        });
+        Entry[] evicted = new Entry[n];
+        int evictedCount = 0;
+        for (int i = 0; i < n && size > target; i++) {
+            evicted[evictedCount++] = removeLocked(snapshot[order[i]].key);
+        }
+        return Arrays.copyOf(evicted, evictedCount);
+    }
+
+    // Called outside the lock, a release can hand the bitmap to the pool.
+    private static void release(Entry[] evicted) {
+        for (Entry entry : evicted) {
+            entry.handle.release();
+        }
+    }
+
+    @Nullable
+    private Entry removeLocked(long key) {
+        AtomicReferenceArray<Entry> table = this.table;
+        int mask = table.length() - 1;
+        for (int slot = PackedKeys.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            Entry entry = table.get(slot);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.key == key && entry != TOMBSTONE) {
+                table.set(slot, TOMBSTONE);
+                count--;
+                size -= entry.size;
+                return entry;
+            }
+        }
+    }
+
+    /** Copies the live entries into a table sized for them, dropping every tombstone. */
+    private void rehash() {
+        int capacity = MIN_CAPACITY;
+        while (capacity < count * 4) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Entry> old = table;
+        AtomicReferenceArray<Entry> fresh = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.length(); i++) {
+            Entry entry = old.get(i);
+            if (entry == null || entry == TOMBSTONE) {
+                continue;
+            }
+            int slot = PackedKeys.hash(entry.key) & mask;
+            while (fresh.get(slot) != null) {
+                slot = (slot + 1) & mask;
+            }
+            fresh.set(slot, entry);
+        }
+        used = count;
+        table = fresh;
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,209 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+import android.util.SparseIntArray;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers combinations the API answered with 404 so that retrying them costs a lookup
+ * instead of a round trip. Entries expire after {@link #TTL_SECONDS} because new
+ * combinations are added upstream from time to time.
+ *
+ * <p>Pairs are keyed by their {@code R.array.emoji_codes} positions, in the canonical
+ * order of {@link ComboIndex#isSwapped}, and kept sorted in a
+ * {@link SparseIntArray} of expiry times. The file is rewritten atomically after every
+ * change:
+ *
+ * <pre>
+ *     int  magic     'EKNC'
+ *     int  version   1
+ *     int  crc32     of the emoji code list, see ComboIndex#getChecksum
+ *     int  count
+ *     count x { int pair, int expiresAtSeconds }
+ * </pre>
+ */
+public class NegativeCache {
+    static final String FILE_NAME = "emoji_missing.bin";
+    static final int MAGIC = 0x454B4E43;
+    static final int VERSION = 1;
+    private static final long TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    private static NegativeCache instance;
+
+    private final File file;
+    private final File tmpFile;
+    private final ComboIndex comboIndex;
+    private final Executor ioExecutor;
+    private final SparseIntArray expiries = new SparseIntArray();
+    private boolean loaded;
+
+    private NegativeCache(Context context, ComboIndex comboIndex, Executor ioExecutor) {
+        this.file = new File(context.getCacheDir(), FILE_NAME);
+        this.tmpFile = new File(context.getCacheDir(), FILE_NAME + ".tmp");
+        this.comboIndex = comboIndex;
+        this.ioExecutor = ioExecutor;
+        ioExecutor.execute(this::ensureLoaded);
+    }
+
+    public static synchronized NegativeCache getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new NegativeCache(app, ComboIndex.getInstance(app),
+                    EmojiCache.getInstance(app).getIoExecutor());
+        }
+        return instance;
+    }
+
+    /** False until the combo index is ready, pairs are keyed in its canonical order. */
+    public synchronized boolean isKnownMissing(String emoji1, String emoji2) {
+        if (!comboIndex.isReady()) {
+            return false;
+        }
+        int pair = pairOf(emoji1, emoji2);
+        if (pair < 0) {
+            return false;
+        }
+        int expiresAt = expiries.get(pair, 0);
+        if (expiresAt == 0) {
+            return false;
+        }
+        if (expiresAt <= nowSeconds()) {
+            expiries.delete(pair);
+            return false;
+        }
+        return true;
+    }
+
+    public void markMissing(String emoji1, String emoji2) {
+        int pair = pairOf(emoji1, emoji2);
+        if (pair < 0) {
+            return;
+        }
+        synchronized (this) {
+            expiries.put(pair, (int) (nowSeconds() + TTL_SECONDS));
+        }
+        ioExecutor.execute(this::persist);
+    }
+
+    public void clear() {
+        synchronized (this) {
+            expiries.clear();
+            loaded = true;
+        }
+        ioExecutor.execute(this::persist);
+    }
+
+    private int pairOf(String emoji1, String emoji2) {
+        int position1 = comboIndex.positionOf(emoji1);
+        int position2 = comboIndex.positionOf(emoji2);
+        if (position1 < 0 || position2 < 0) {
+            return -1;
+        }
+        if (comboIndex.isSwapped(position1, position2)) {
+            return (position2 << 16) | position1;
+        }
+        return (position1 << 16) | position2;
+    }
+
+    private static long nowSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    /**
+     * Merges the file into memory once. Guarded by the file lock so it never overlaps a
+     * write, and skipped if {@link #clear()} ran before it.
+     */
+    @WorkerThread
+    private void ensureLoaded() {
+        synchronized (file) {
+            synchronized (this) {
+                if (loaded) {
+                    return;
+                }
+            }
+            int[] pairs = new int[0];
+            int[] times = new int[0];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != comboIndex.getChecksum()) {
+                    throw new IOException("discarding " + FILE_NAME + " written for another emoji list");
+                }
+                int count = in.readInt();
+                pairs = new int[count];
+                times = new int[count];
+                for (int i = 0; i < count; i++) {
+                    pairs[i] = in.readInt();
+                    times[i] = in.readInt();
+                }
+            } catch (FileNotFoundException e) {
+                // Nothing recorded yet.
+            } catch (IOException e) {
+                e.printStackTrace();
+                pairs = new int[0];
+                times = new int[0];
+                file.delete();
+            }
+
+            long now = nowSeconds();
+            synchronized (this) {
+                if (loaded) {
+                    return;
+                }
+                for (int i = 0; i < pairs.length; i++) {
+                    // Entries recorded since startup are newer than the file.
+                    if (times[i] > now && expiries.indexOfKey(pairs[i]) < 0) {
+                        expiries.put(pairs[i], times[i]);
+                    }
+                }
+                loaded = true;
+            }
+        }
+    }
+
+    @WorkerThread
+    private void persist() {
+        ensureLoaded();
+        synchronized (file) {
+            int[] pairs;
+            int[] times;
+            synchronized (this) {
+                int count = expiries.size();
+                pairs = new int[count];
+                times = new int[count];
+                for (int i = 0; i < count; i++) {
+                    pairs[i] = expiries.keyAt(i);
+                    times[i] = expiries.valueAt(i);
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(comboIndex.getChecksum());
+                out.writeInt(pairs.length);
+                for (int i = 0; i < pairs.length; i++) {
+                    out.writeInt(pairs[i]);
+                    out.writeInt(times[i]);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                tmpFile.delete();
+                return;
+            }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.je.emojikitchen;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.je.emojikitchen.core.CacheKeys;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Warms the disk cache from a combo pack: a zip archive of PNGs named like cache
+ * variants, such as {@code emoji_1f600_1f603_128px.png}, in any folder.
+ *
+ * <p>One thread inflates the archive as it streams from the content resolver and hands
+ * each entry to a small pool, which checks it and writes it to the cache in parallel. The
+ * reader waits while {@link #MAX_IN_FLIGHT} entries are pending, so an import holds a
+ * few entries in memory however large the pack is. Entries are skipped if the cache has
+ * no key for their name, if they are not PNGs of the size the name claims, or if they are
+ * larger than {@link #MAX_ENTRY_SIZE}. The cache evicts as usual, so a pack larger than
+ * the disk budget keeps its last entries.
+ *
+ * <p>An import outlives the activity that started it: a recreated activity finds it through
+ * {@link #getRunning()} and {@link #attach}es its listener. The latest progress and the
+ * outcome are kept for a listener that attaches late. Listener methods run on the main
+ * thread, and none run after {@link #cancel()}.
+ */
+class PackImporter {
+    private static final String TAG = "PackImporter";
+    private static final String PNG_MIME_TYPE = "image/png";
+    private static final String PNG_EXTENSION = ".png";
+    private static final int MAX_ENTRY_SIZE = 4 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WORKERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int MAX_IN_FLIGHT = WORKERS * 2;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    // Bounds the wait for the last entries once the archive is read.
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    // Guarded by PackImporter.class.
+    private static PackImporter running;
+
+    interface Listener {
+        /** {@code total} is the size of the pack in bytes, or -1 if the provider does not know it. */
+        void onProgress(long read, long total, int imported);
+        void onFinished(int imported, int skipped);
+        void onError(String message);
+    }
+
+    /** One call to a listener, kept so it can be replayed to a listener attached later. */
+    private interface Event {
+        void deliverTo(Listener listener);
+    }
+
+    /** Counts the compressed bytes the archive has consumed, for progress. */
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /** Hands its array to the worker, an entry is only copied into the cache. */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+        EntryBuffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final Context context;
+    private final EmojiCache cache;
+    private final Uri uri;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger imported = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    // Main thread only.
+    @Nullable
+    private Listener listener;
+    @Nullable
+    private Event latestProgress;
+    @Nullable
+    private Event outcome;
+
+    PackImporter(Context context, Uri uri) {
+        this.context = context.getApplicationContext();
+        this.cache = EmojiCache.getInstance(context);
+        this.uri = uri;
+    }
+
+    /** The import started last, until it finishes or is cancelled. */
+    @Nullable
+    static synchronized PackImporter getRunning() {
+        return running;
+    }
+
+    void start() {
+        synchronized (PackImporter.class) {
+            running = this;
+        }
+        new Thread(this::run, TAG).start();
+    }
+
+    /** Stops reading the pack. Entries already read are still stored. */
+    void cancel() {
+        cancelled.set(true);
+        clearRunning();
+    }
+
+    /** Sends further events to {@code listener}, after replaying the latest ones. */
+    @MainThread
+    void attach(Listener listener) {
+        this.listener = listener;
+        if (latestProgress != null) {
+            latestProgress.deliverTo(listener);
+        }
+        if (outcome != null) {
+            outcome.deliverTo(listener);
+            clearRunning();
+        }
+    }
+
+    /** Keeps the import going without a listener, for an activity being recreated. */
+    @MainThread
+    void detach() {
+        listener = null;
+    }
+
+    private void run() {
+        long total = querySize();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS,
+                runnable -> new Thread(runnable, TAG + "-" + threadCount.incrementAndGet()));
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        AtomicLong stored = new AtomicLong();
+        try (InputStream raw = context.getContentResolver().openInputStream(uri)) {
+            if (raw == null) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            CountingInputStream counted = new CountingInputStream(raw);
+            ZipInputStream zip = new ZipInputStream(new BufferedInputStream(counted, READ_BUFFER_SIZE));
+            long lastProgress = 0;
+            ZipEntry entry;
+            while (!cancelled.get() && (entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                EntryBuffer data = name.endsWith(PNG_EXTENSION) ? readEntry(zip, entry) : null;
+                if (data == null) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                String variant = name.substring(0, name.length() - PNG_EXTENSION.length());
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        if (store(variant, data)) {
+                            imported.incrementAndGet();
+                            stored.addAndGet(data.size());
+                        } else {
+                            skipped.incrementAndGet();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = SystemClock.uptimeMillis();
+                if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    lastProgress = now;
+                    long read = counted.count;
+                    int count = imported.get();
+                    postProgress(target -> target.onProgress(read, total, count));
+                }
+            }
+            workers.shutdown();
+            if (!workers.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("timed out storing the last entries");
+            }
+            Log.i(TAG, "imported " + imported.get() + " entries, " + stored.get() + " bytes, skipped "
+                    + skipped.get());
+            int importedCount = imported.get();
+            int skippedCount = skipped.get();
+            postOutcome(target -> target.onFinished(importedCount, skippedCount));
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to import " + uri, e);
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            postOutcome(target -> target.onError(message));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clearRunning();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /** Reads the current entry, or skips it and returns null if it is too large. */
+    private EntryBuffer readEntry(ZipInputStream zip, ZipEntry entry) throws IOException {
+        long declared = entry.getSize();
+        if (declared > MAX_ENTRY_SIZE) {
+            return null;
+        }
+        EntryBuffer data = new EntryBuffer(declared > 0 ? (int) declared : READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = zip.read(buffer)) != -1) {
+            if (data.size() + read > MAX_ENTRY_SIZE) {
+                return null;
+            }
+            data.write(buffer, 0, read);
+        }
+        return data;
+    }
+
+    /** Checks the PNG header against the size in the name, then stores the entry. */
+    private boolean store(String variant, EntryBuffer data) {
+        int size = CacheKeys.sizeOf(variant);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data.array(), 0, data.size(), options);
+        if (size <= 0 || options.outWidth != size || options.outHeight != size
+                || !PNG_MIME_TYPE.equals(options.outMimeType)) {
+            return false;
+        }
+        try {
+            return cache.saveImported(variant, data.array(), data.size());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store " + variant, e);
+            return false;
+        }
+    }
+
+    private long querySize() {
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot query the size of " + uri, e);
+        }
+        return -1;
+    }
+
+    private void postProgress(Event event) {
+        mainHandler.post(() -> {
+            if (cancelled.get()) {
+                return;
+            }
+            latestProgress = event;
+            if (listener != null) {
+                event.deliverTo(listener);
+            }
+        });
+    }
+
+    /**
+     * Delivers the last event of the import. Without a listener the import stays
+     * {@link #getRunning()} until one attaches and receives it.
+     */
+    private void postOutcome(Event event) {
+        mainHandler.post(() -> {
+            if (cancelled.get()) {
+                return;
+            }
+            outcome = event;
+            if (listener != null) {
+                event.deliverTo(listener);
+                clearRunning();
+            }
+        });
+    }
+
+    private void clearRunning() {
+        synchronized (PackImporter.class) {
+            if (running == this) {
+                running = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.je.emojikitchen;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Draws a smaller variant stretched over the bounds of the variant it stands in for. It
+ * reports the intrinsic size of the full image, so a wrap_content ImageView lays out
+ * exactly as it will once the full image replaces it and nothing around it moves.
+ */
+class PlaceholderDrawable extends Drawable {
+    private final Bitmap bitmap;
+    private final int size;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /** {@code size} is the pixel size of the full image, square like every variant. */
+    PlaceholderDrawable(Bitmap bitmap, int size) {
+        this.bitmap = bitmap;
+        this.size = size;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(bitmap, null, getBounds(), paint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return size;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return size;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,54 @@
+package com.je.emojikitchen.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Inputs shared by the benchmarks. */
+final class BenchmarkData {
+    private static final String ARRAYS_RESOURCE = "/arrays.xml";
+    private static final Pattern EMOJI_CODES = Pattern.compile(
+            "<string-array name=\"emoji_codes\">(.*?)</string-array>", Pattern.DOTALL);
+    private static final Pattern ITEM = Pattern.compile("<item>([^<]+)</item>");
+
+    static final int[] SIZES = {32, 64, 128, 256, 512};
+
+    private BenchmarkData() {
+    }
+
+    /** The codes of {@code R.array.emoji_codes}, read from the app's resources. */
+    static String[] emojiCodes() {
+        Matcher array = EMOJI_CODES.matcher(readResource(ARRAYS_RESOURCE));
+        if (!array.find()) {
+            throw new IllegalStateException("emoji_codes missing from " + ARRAYS_RESOURCE);
+        }
+        List<String> codes = new ArrayList<>();
+        Matcher item = ITEM.matcher(array.group(1));
+        while (item.find()) {
+            codes.add(item.group(1).trim());
+        }
+        return codes.toArray(new String[0]);
+    }
+
+    private static String readResource(String name) {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException(name + " is not on the classpath");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), Charset.forName("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.CacheKeys;
+import com.je.emojikitchen.core.KeyCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and parsing cache keys for a rotating pair of emoji codes. The {@code format*}
+ * methods are the {@code String.format} calls the app used before {@link CacheKeys}, the
+ * {@code *Packed*} ones go through the {@link KeyCodec} the cache uses now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyBenchmark {
+    private String[] codes;
+    private String[] variantKeys;
+    private KeyCodec codec;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        codes = BenchmarkData.emojiCodes();
+        codec = new KeyCodec(codes);
+        variantKeys = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            variantKeys[i] = CacheKeys.variantKey(codes[i], codes[codes.length - 1 - i],
+                    BenchmarkData.SIZES[i % BenchmarkData.SIZES.length]);
+        }
+    }
+
+    private int advance() {
+        int i = next;
+        next = i + 1 == codes.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public String formatComboKey() {
+        int i = advance();
+        return String.format("emoji_%s_%s", codes[i], codes[codes.length - 1 - i]);
+    }
+
+    @Benchmark
+    public String formatVariantKey() {
+        int i = advance();
+        return String.format(Locale.US, "emoji_%s_%s_%dpx", codes[i], codes[codes.length - 1 - i],
+                BenchmarkData.SIZES[i % BenchmarkData.SIZES.length]);
+    }
+
+    @Benchmark
+    public String comboKey() {
+        int i = advance();
+        return CacheKeys.comboKey(codes[i], codes[codes.length - 1 - i]);
+    }
+
+    @Benchmark
+    public String variantKey() {
+        int i = advance();
+        return CacheKeys.variantKey(codes[i], codes[codes.length - 1 - i],
+                BenchmarkData.SIZES[i % BenchmarkData.SIZES.length]);
+    }
+
+    @Benchmark
+    public int parseVariantSize() {
+        return CacheKeys.sizeOf(variantKeys[advance()]);
+    }
+
+    @Benchmark
+    public long encodePackedKey() {
+        int i = advance();
+        return codec.encode(codes[i], codes[codes.length - 1 - i],
+                BenchmarkData.SIZES[i % BenchmarkData.SIZES.length]);
+    }
+
+    @Benchmark
+    public long decodePackedKey() {
+        return codec.decode(variantKeys[advance()]);
+    }
+}
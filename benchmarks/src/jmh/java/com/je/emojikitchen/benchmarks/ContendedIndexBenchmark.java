@@ -0,0 +1,54 @@
+package com.je.emojikitchen.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The index shared by the UI lookups and the I/O threads: three threads doing skewed
+ * get-or-insert while a fourth inserts downloads and runs maintenance, as the prefetcher
+ * and the cache's write path do.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContendedIndexBenchmark {
+    private static final int CAPACITY = 2000;
+
+    private IndexFixture fixture;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new IndexFixture(CAPACITY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(3)
+    public boolean get() {
+        return fixture.access(fixture.pick());
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(1)
+    public int put() {
+        fixture.index.put(fixture.pick(), IndexFixture.ENTRY_LENGTH);
+        return fixture.maintain();
+    }
+}
@@ -0,0 +1,61 @@
+package com.je.emojikitchen.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Single-threaded insert, touch and trim on a full disk index. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DiskIndexBenchmark {
+    @Param({"1000", "5000"})
+    public int capacity;
+
+    private IndexFixture fixture;
+    private int nextInsert;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new IndexFixture(capacity);
+        nextInsert = capacity;
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    /** Reads of the most recently inserted, so always resident, entry. */
+    @Benchmark
+    public void touch() {
+        fixture.index.touch(fixture.keys[(nextInsert - 1) % fixture.keys.length]);
+    }
+
+    /** A key that is not in the index, followed by the eviction it forces. */
+    @Benchmark
+    public int insertAndTrim() {
+        long key = fixture.keys[nextInsert];
+        nextInsert = nextInsert + 1 == fixture.keys.length ? 0 : nextInsert + 1;
+        fixture.index.put(key, IndexFixture.ENTRY_LENGTH);
+        return fixture.maintain();
+    }
+
+    /** Skewed lookups that insert on a miss, with maintenance after every miss. */
+    @Benchmark
+    public int churn() {
+        if (fixture.access(fixture.pick())) {
+            return 0;
+        }
+        return fixture.maintain();
+    }
+}
@@ -0,0 +1,73 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.EmojiCodes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Turning one emoji code into its glyph string, as the grids did on every bind. The
+ * {@code legacy*} methods are the two adapters' old {@code convertHexToEmoji}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexToEmojiBenchmark {
+    private static final Pattern VARIATION_SELECTOR = Pattern.compile("-fe0f$");
+
+    private String[] codes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        codes = BenchmarkData.emojiCodes();
+    }
+
+    private String nextCode() {
+        String code = codes[next];
+        next = next + 1 == codes.length ? 0 : next + 1;
+        return code;
+    }
+
+    @Benchmark
+    public String legacyRecyclerAdapter() {
+        String hexCode = VARIATION_SELECTOR.matcher(nextCode()).replaceAll("");
+        String[] parts = hexCode.split("-");
+        StringBuilder emoji = new StringBuilder();
+        for (String part : parts) {
+            emoji.append(Character.toChars(Integer.parseInt(part, 16)));
+        }
+        return emoji.toString();
+    }
+
+    @Benchmark
+    public String legacyArrayAdapter() {
+        String hexCode = nextCode();
+        try {
+            StringBuilder emoji = new StringBuilder();
+            String[] parts = hexCode.split("-");
+
+            for (String part : parts) {
+                part = VARIATION_SELECTOR.matcher(part).replaceFirst("");
+                int codePoint = Integer.parseInt(part, 16);
+                emoji.append(new String(Character.toChars(codePoint)));
+            }
+            return emoji.toString();
+        } catch (NumberFormatException e) {
+            return hexCode;
+        }
+    }
+
+    @Benchmark
+    public String emojiCodes() {
+        return EmojiCodes.toGlyph(nextCode());
+    }
+}
@@ -0,0 +1,106 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.EmojiCodes;
+import com.je.emojikitchen.core.FileStore;
+import com.je.emojikitchen.core.ImageStore;
+import com.je.emojikitchen.core.KeyCodec;
+import com.je.emojikitchen.core.PackedKeys;
+import com.je.emojikitchen.core.SegmentStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads, writes and clearing of a full store, one file per variant against packed
+ * segments. Entries have the length of a typical 128px PNG.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageStoreBenchmark {
+    private static final int ENTRY_LENGTH = 20 * 1024;
+
+    @Param({"file", "segment"})
+    public String engine;
+
+    @Param({"2000"})
+    public int capacity;
+
+    private File directory;
+    private ImageStore store;
+    private long[] keys;
+    private byte[] content;
+    private int nextWrite;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("imagestore", "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        String[] codes = BenchmarkData.emojiCodes();
+        long maxSize = (long) capacity * ENTRY_LENGTH;
+        store = "file".equals(engine)
+                ? new FileStore(directory, maxSize, new KeyCodec(codes))
+                : new SegmentStore(directory, maxSize, EmojiCodes.checksum(codes));
+        store.load();
+        content = new byte[ENTRY_LENGTH];
+        new Random(1).nextBytes(content);
+        keys = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keys[i] = PackedKeys.pack(i % codes.length, i / codes.length, 128);
+            store.write(keys[i], out -> out.write(content));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /** A stored entry, read to the last byte the way a decoder would. */
+    @Benchmark
+    public int read() throws IOException {
+        long key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        store.touch(key);
+        ByteBuffer bytes = store.read(key);
+        int sum = 0;
+        while (bytes.hasRemaining()) {
+            sum += bytes.get();
+        }
+        return sum;
+    }
+
+    /** Replaces an entry, with the maintenance EmojiCache schedules after writes. */
+    @Benchmark
+    public long write() throws IOException {
+        long key = keys[nextWrite];
+        nextWrite = nextWrite + 1 == keys.length ? 0 : nextWrite + 1;
+        long length = store.write(key, out -> out.write(content));
+        if (store.needsMaintenance()) {
+            store.maintain();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,149 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.ImageSizes;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Pixel helpers for the resampling benchmarks. Pixels are non-premultiplied
+ * {@code 0xAARRGGBB} ints, the same layout the app gets from {@code Bitmap.getPixels}.
+ */
+final class Images {
+    private Images() {
+    }
+
+    /**
+     * A square test image with what makes emoji hard to scale: an antialiased round
+     * silhouette on a transparent margin, smooth shading and one pixel wide strokes.
+     */
+    static int[] syntheticMaster(int size) {
+        int[] pixels = new int[size * size];
+        double center = size / 2.0;
+        double radius = size * 0.42;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double distance = Math.hypot(x + 0.5 - center, y + 0.5 - center);
+                double coverage = Math.max(0, Math.min(1, radius - distance + 0.5));
+                if (coverage == 0) {
+                    continue;
+                }
+                int red = 255;
+                int green = 160 + (int) (80 * (1 - distance / radius));
+                int blue = 40;
+                if (y % 16 == 0 && Math.abs(x - center) < radius / 2) {
+                    red = green = blue = 30;
+                }
+                pixels[y * size + x] = (int) Math.round(coverage * 255) << 24 | red << 16 | green << 8 | blue;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * What the app did before the resampler: decode with the power-of-two sample size,
+     * which keeps every n-th pixel, then scale bilinearly to {@code size}.
+     */
+    static int[] subsampleBilinear(int[] src, int srcSize, int size) {
+        int sample = ImageSizes.calculateInSampleSize(srcSize, srcSize, size, size);
+        int sampledSize = (srcSize + sample - 1) / sample;
+        int[] sampled = new int[sampledSize * sampledSize];
+        for (int y = 0; y < sampledSize; y++) {
+            for (int x = 0; x < sampledSize; x++) {
+                sampled[y * sampledSize + x] = src[y * sample * srcSize + x * sample];
+            }
+        }
+        return bilinear(sampled, sampledSize, size);
+    }
+
+    /** Bilinear scaling of premultiplied values, like a filtered {@code Canvas.drawBitmap}. */
+    static int[] bilinear(int[] src, int srcSize, int size) {
+        int[] dst = new int[size * size];
+        double scale = (double) srcSize / size;
+        for (int y = 0; y < size; y++) {
+            double sy = Math.max(0, Math.min(srcSize - 1, (y + 0.5) * scale - 0.5));
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, srcSize - 1);
+            double fy = sy - y0;
+            for (int x = 0; x < size; x++) {
+                double sx = Math.max(0, Math.min(srcSize - 1, (x + 0.5) * scale - 0.5));
+                int x0 = (int) sx;
+                int x1 = Math.min(x0 + 1, srcSize - 1);
+                double fx = sx - x0;
+                int p00 = src[y0 * srcSize + x0];
+                int p01 = src[y0 * srcSize + x1];
+                int p10 = src[y1 * srcSize + x0];
+                int p11 = src[y1 * srcSize + x1];
+                double w00 = (1 - fx) * (1 - fy);
+                double w01 = fx * (1 - fy);
+                double w10 = (1 - fx) * fy;
+                double w11 = fx * fy;
+                double alpha = channel(p00, 24) * w00 + channel(p01, 24) * w01
+                        + channel(p10, 24) * w10 + channel(p11, 24) * w11;
+                if (Math.round(alpha) == 0) {
+                    continue;
+                }
+                int pixel = (int) Math.round(alpha) << 24;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    double premultiplied = premultiplied(p00, shift) * w00 + premultiplied(p01, shift) * w01
+                            + premultiplied(p10, shift) * w10 + premultiplied(p11, shift) * w11;
+                    pixel |= clamp(premultiplied * 255 / alpha) << shift;
+                }
+                dst[y * size + x] = pixel;
+            }
+        }
+        return dst;
+    }
+
+    private static int channel(int pixel, int shift) {
+        return (pixel >>> shift) & 0xff;
+    }
+
+    private static double premultiplied(int pixel, int shift) {
+        return channel(pixel, shift) * channel(pixel, 24) / 255.0;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * Peak signal to noise ratio of {@code actual} against {@code expected} in dB, over
+     * premultiplied channels so invisible colors under zero alpha do not count. Infinite
+     * for identical images.
+     */
+    static double psnr(int[] expected, int[] actual) {
+        double squared = 0;
+        for (int i = 0; i < expected.length; i++) {
+            int e = expected[i];
+            int a = actual[i];
+            int ea = e >>> 24;
+            int aa = a >>> 24;
+            squared += square(ea - aa);
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                double ec = ((e >> shift) & 0xff) * ea / 255.0;
+                double ac = ((a >> shift) & 0xff) * aa / 255.0;
+                squared += square(ec - ac);
+            }
+        }
+        double mse = squared / (expected.length * 4.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /** Decodes a PNG into pixels, returning its side length in {@code size[0]}. */
+    static int[] readPng(InputStream in, int[] size) throws IOException {
+        BufferedImage image = ImageIO.read(in);
+        if (image == null || image.getWidth() != image.getHeight()) {
+            throw new IOException("expected a square image");
+        }
+        size[0] = image.getWidth();
+        return image.getRGB(0, 0, size[0], size[0], null, 0, size[0]);
+    }
+}
@@ -0,0 +1,32 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.ImageSizes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Sample size for decoding a stored variant at every requestable size. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InSampleSizeBenchmark {
+    @Param({"128", "512"})
+    public int storedSize;
+
+    private int requested = ImageSizes.MIN_SIZE;
+
+    @Benchmark
+    public int calculateInSampleSize() {
+        int size = requested;
+        requested = size + ImageSizes.SIZE_STEP > ImageSizes.MAX_SIZE
+                ? ImageSizes.MIN_SIZE : size + ImageSizes.SIZE_STEP;
+        return ImageSizes.calculateInSampleSize(storedSize, storedSize, size, size);
+    }
+}
@@ -0,0 +1,84 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.DiskIndex;
+import com.je.emojikitchen.core.KeyCodec;
+import com.je.emojikitchen.core.PackedKeys;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link DiskIndex} in a temp directory, filled to capacity, plus a universe of variant
+ * keys four times larger than what fits. {@link #pick()} draws keys with the skew of real
+ * use: most lookups go to a small set of favourite combinations.
+ */
+final class IndexFixture {
+    static final long ENTRY_LENGTH = 20 * 1024;
+    private static final int UNIVERSE_FACTOR = 4;
+    private static final int HOT_PERCENT = 80;
+    private static final int HOT_FRACTION = 5;
+
+    final File directory;
+    final DiskIndex index;
+    final long[] keys;
+
+    IndexFixture(int capacity) throws IOException {
+        directory = File.createTempFile("diskindex", "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        String[] codes = BenchmarkData.emojiCodes();
+        index = new DiskIndex(directory, capacity * ENTRY_LENGTH, new KeyCodec(codes));
+        index.load();
+
+        keys = new long[capacity * UNIVERSE_FACTOR];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = PackedKeys.pack(i % codes.length, (i / codes.length * 7 + i) % codes.length,
+                    BenchmarkData.SIZES[(i / (codes.length * 2)) % BenchmarkData.SIZES.length]);
+        }
+        for (int i = 0; i < capacity; i++) {
+            index.put(keys[i], ENTRY_LENGTH);
+        }
+    }
+
+    long pick() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int hot = keys.length / HOT_FRACTION;
+        if (random.nextInt(100) < HOT_PERCENT) {
+            return keys[random.nextInt(hot)];
+        }
+        return keys[hot + random.nextInt(keys.length - hot)];
+    }
+
+    /** Looks {@code key} up the way EmojiCache does, inserting it on a miss. */
+    boolean access(long key) {
+        if (index.contains(key)) {
+            index.touch(key);
+            return true;
+        }
+        index.put(key, ENTRY_LENGTH);
+        return false;
+    }
+
+    /** The trimming and compaction EmojiCache runs after writes. */
+    int maintain() {
+        if (!index.needsMaintenance()) {
+            return 0;
+        }
+        int evicted = index.trimToSize().length;
+        index.compactIfNeeded();
+        return evicted;
+    }
+
+    void delete() {
+        index.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,84 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.CacheKeys;
+import com.je.emojikitchen.core.LongLruIndex;
+import com.je.emojikitchen.core.PackedKeys;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of a disk index lookup: the access-ordered
+ * {@code LinkedHashMap<String, Long>} {@code DiskIndex} used to keep, against the
+ * {@link LongLruIndex} it keeps now. Half of the probed keys are present.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LruIndexBenchmark {
+    @Param({"1000", "10000"})
+    public int entries;
+
+    private LinkedHashMap<String, Long> stringIndex;
+    private LongLruIndex longIndex;
+    private String[] names;
+    private long[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] codes = BenchmarkData.emojiCodes();
+        names = new String[entries * 2];
+        keys = new long[entries * 2];
+        for (int i = 0; i < keys.length; i++) {
+            int first = i % codes.length;
+            int second = (i / codes.length * 7 + i) % codes.length;
+            int size = BenchmarkData.SIZES[(i / (codes.length * 2)) % BenchmarkData.SIZES.length];
+            names[i] = CacheKeys.variantKey(codes[first], codes[second], size);
+            keys[i] = PackedKeys.pack(first, second, size);
+        }
+        stringIndex = new LinkedHashMap<>(16, 0.75f, true);
+        longIndex = new LongLruIndex(entries);
+        for (int i = 0; i < entries; i++) {
+            stringIndex.put(names[i * 2], 1L);
+            longIndex.put(keys[i * 2], 1L, -1);
+        }
+    }
+
+    private int advance() {
+        int i = next;
+        next = i + 1 == keys.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Long stringGet() {
+        return stringIndex.get(names[advance()]);
+    }
+
+    @Benchmark
+    public boolean longTouch() {
+        return longIndex.touch(keys[advance()]);
+    }
+
+    @Benchmark
+    public Long stringReplace() {
+        int i = advance() & ~1;
+        return stringIndex.put(names[i], 2L);
+    }
+
+    @Benchmark
+    public long longReplace() {
+        int i = advance() & ~1;
+        return longIndex.put(keys[i], 2L, -1);
+    }
+}
@@ -0,0 +1,56 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.ImageSizes;
+import com.je.emojikitchen.core.Resampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deriving a variant from the 512 px master on the device: the Lanczos {@link Resampler}
+ * the cache uses now against the subsample-then-bilinear path it replaced. How close
+ * either gets to what the server renders is measured by {@link ResamplerQuality}, which
+ * needs the network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResamplerBenchmark {
+    @Param({"32", "128", "200", "256"})
+    public int size;
+
+    private int[] master;
+    private int[] reused;
+    private final Resampler.Buffers buffers = new Resampler.Buffers();
+
+    @Setup
+    public void setUp() {
+        master = Images.syntheticMaster(ImageSizes.MAX_SIZE);
+        reused = new int[size * size];
+    }
+
+    @Benchmark
+    public int[] lanczos() {
+        return Resampler.resize(master, ImageSizes.MAX_SIZE, ImageSizes.MAX_SIZE, size, size);
+    }
+
+    /** What the cache does, with the output and work arrays kept across calls. */
+    @Benchmark
+    public int[] lanczosReusingBuffers() {
+        Resampler.resize(master, ImageSizes.MAX_SIZE, ImageSizes.MAX_SIZE, reused, size, size, buffers);
+        return reused;
+    }
+
+    @Benchmark
+    public int[] subsampleBilinear() {
+        return Images.subsampleBilinear(master, ImageSizes.MAX_SIZE, size);
+    }
+}
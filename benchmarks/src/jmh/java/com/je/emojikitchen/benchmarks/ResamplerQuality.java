@@ -0,0 +1,87 @@
+package com.je.emojikitchen.benchmarks;
+
+import com.je.emojikitchen.core.ImageSizes;
+import com.je.emojikitchen.core.Resampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * Compares sizes derived on the device from the 512 px master with what the API renders
+ * for the same size, for a handful of real combinations. Prints, per size, the PSNR of
+ * the Lanczos resampler and of the old subsample-then-bilinear path against the server's
+ * image, next to the time each side took. Needs the network, so it is not a JMH benchmark:
+ * run it with {@code ./gradlew :benchmarks:resamplerQuality}.
+ */
+public final class ResamplerQuality {
+    private static final String API = "https://emk.vercel.app/s/%s_%s?size=%d";
+    private static final int[] SIZES = {32, 64, 128, 200, 256};
+    private static final int DEFAULT_SAMPLES = 5;
+    private static final int MAX_ATTEMPTS = 60;
+
+    private ResamplerQuality() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+        String[] codes = BenchmarkData.emojiCodes();
+        double[] lanczosPsnr = new double[SIZES.length];
+        double[] bilinearPsnr = new double[SIZES.length];
+        long[] lanczosNanos = new long[SIZES.length];
+        long[] serverNanos = new long[SIZES.length];
+        int found = 0;
+        for (int i = 1; i < codes.length && i <= MAX_ATTEMPTS && found < samples; i++) {
+            int[] side = new int[1];
+            int[] master = fetch(codes[0], codes[i], ImageSizes.MAX_SIZE, side);
+            if (master == null || side[0] != ImageSizes.MAX_SIZE) {
+                continue;
+            }
+            for (int s = 0; s < SIZES.length; s++) {
+                int size = SIZES[s];
+                long start = System.nanoTime();
+                int[] server = fetch(codes[0], codes[i], size, side);
+                serverNanos[s] += System.nanoTime() - start;
+                if (server == null || side[0] != size) {
+                    throw new IOException("server sent no " + size + " px image for " + codes[i]);
+                }
+                start = System.nanoTime();
+                int[] lanczos = Resampler.resize(master, ImageSizes.MAX_SIZE, ImageSizes.MAX_SIZE, size, size);
+                lanczosNanos[s] += System.nanoTime() - start;
+                lanczosPsnr[s] += Images.psnr(server, lanczos);
+                bilinearPsnr[s] += Images.psnr(server, Images.subsampleBilinear(master, ImageSizes.MAX_SIZE, size));
+            }
+            found++;
+            System.out.println("sampled " + codes[0] + "_" + codes[i]);
+        }
+        if (found == 0) {
+            throw new IOException("no combination could be fetched");
+        }
+        System.out.printf(Locale.US, "%n%6s %14s %14s %12s %12s%n",
+                "size", "lanczos dB", "bilinear dB", "local ms", "server ms");
+        for (int s = 0; s < SIZES.length; s++) {
+            System.out.printf(Locale.US, "%6d %14.2f %14.2f %12.2f %12.2f%n", SIZES[s],
+                    lanczosPsnr[s] / found, bilinearPsnr[s] / found,
+                    lanczosNanos[s] / found / 1e6, serverNanos[s] / found / 1e6);
+        }
+    }
+
+    /** Returns the pixels of one rendered size, or null if the combination does not exist. */
+    private static int[] fetch(String emoji1, String emoji2, int size, int[] side) throws IOException {
+        URL url = new URL(String.format(Locale.US, API, emoji1, emoji2, size));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept", "image/png");
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return Images.readPng(in, side);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
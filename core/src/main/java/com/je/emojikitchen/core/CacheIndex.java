@@ -0,0 +1,55 @@
+package com.je.emojikitchen.core;
+
+import java.io.IOException;
+
+/**
+ * Size-bounded LRU bookkeeping for the encoded images in a cache, keyed by
+ * {@link PackedKeys}. An index only tracks keys, their byte lengths and their access order;
+ * storing and deleting the bytes is up to its owner.
+ */
+public interface CacheIndex {
+    /** Loads the persisted state once. Every other method loads it first if needed. */
+    void load() throws IOException;
+
+    boolean contains(long key);
+
+    /**
+     * Returns the smallest stored size of {@code combo} that is at least {@code size}, or
+     * -1 if every stored variant is smaller.
+     */
+    int ceilingSize(long combo, int size);
+
+    /**
+     * Returns the largest stored size of {@code combo} that is at most {@code size}, or -1
+     * if every stored variant is larger.
+     */
+    int floorSize(long combo, int size);
+
+    /** Records {@code key} as the most recently used entry of {@code length} bytes. */
+    void put(long key, long length);
+
+    /** Marks {@code key} as the most recently used entry, if present. */
+    void touch(long key);
+
+    void remove(long key);
+
+    /** Drops every entry along with the stored bytes. */
+    void clear();
+
+    /** Total length of all entries, in bytes. */
+    long size();
+
+    int entryCount();
+
+    /** Whether {@link #trimToSize()} or {@link #compactIfNeeded()} has work to do. */
+    boolean needsMaintenance();
+
+    /**
+     * Drops least recently used entries until the index fits in its budget and returns
+     * their keys, for the owner to delete the bytes.
+     */
+    long[] trimToSize();
+
+    /** Rewrites the persisted state if enough of it is redundant. */
+    void compactIfNeeded();
+}
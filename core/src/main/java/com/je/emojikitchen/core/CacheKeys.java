@@ -0,0 +1,47 @@
+package com.je.emojikitchen.core;
+
+/**
+ * Names of cache entries. A combination of two emoji codes is {@code emoji_<a>_<b>}, and
+ * its variant for one pixel size is {@code emoji_<a>_<b>_<size>px}. Keys double as file
+ * names, so they only contain the hex codes, underscores and digits.
+ */
+public final class CacheKeys {
+    public static final String PREFIX = "emoji_";
+    public static final String SIZE_SUFFIX = "px";
+
+    private CacheKeys() {
+    }
+
+    public static String comboKey(String emoji1, String emoji2) {
+        return PREFIX + emoji1 + '_' + emoji2;
+    }
+
+    public static String variantKey(String emoji1, String emoji2, int size) {
+        return variantKey(comboKey(emoji1, emoji2), size);
+    }
+
+    public static String variantKey(String comboKey, int size) {
+        return comboKey + '_' + size + SIZE_SUFFIX;
+    }
+
+    /** Returns the pixel size of a variant key, or -1 if {@code key} has no size. */
+    public static int sizeOf(String key) {
+        int separator = key.lastIndexOf('_');
+        if (separator < 0 || !key.endsWith(SIZE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(key.substring(separator + 1, key.length() - SIZE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Returns the combination key of a variant key, or null if {@code key} has no size. */
+    public static String comboKeyOf(String key) {
+        if (sizeOf(key) < 0) {
+            return null;
+        }
+        return key.substring(0, key.lastIndexOf('_'));
+    }
+}
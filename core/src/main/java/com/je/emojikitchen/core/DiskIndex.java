@@ -0,0 +1,452 @@
+package com.je.emojikitchen.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * LRU bookkeeping for the files in the emoji disk cache, persisted as an append-only
+ * journal in the style of DiskLruCache. Each line records one operation:
+ *
+ * <pre>
+ *     CLEAN emoji_1f600_1f603_128px 18342
+ *     READ emoji_1f600_1f603_128px
+ *     REMOVE emoji_1f600_1f603_128px
+ * </pre>
+ *
+ * Replaying the journal rebuilds both the byte accounting and the access order without
+ * listing or stat-ing the cached files. Once enough lines are redundant the journal is
+ * compacted into one CLEAN line per live entry.
+ *
+ * <p>Inserts and reads only append to the journal. Trimming and compaction are left to
+ * {@link #trimToSize()} and {@link #compactIfNeeded()} so the owner can run them off the
+ * lookup path, and evicted files are deleted by the owner so it can serialize that with
+ * writes to the same key.
+ *
+ * <p>In memory, entries are {@link PackedKeys} in a {@link LongLruIndex}, and names only
+ * exist in the journal and on disk. Files whose names the {@link KeyCodec} cannot decode,
+ * such as single-size entries from before variants or codes that left the emoji list, are
+ * deleted on load. {@link #ceilingSize} and {@link #floorSize} go through
+ * {@link SizeBuckets}.
+ */
+public class DiskIndex implements CacheIndex {
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+    static final String MAGIC = "emojikitchen.DiskIndex";
+    static final String VERSION = "1";
+    static final String FILE_EXTENSION = ".png";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final String SHARE_SUFFIX = "_tmp_share.png";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final long[] NO_KEYS = new long[0];
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final File journalFile;
+    private final File journalFileTmp;
+    private final File journalFileBackup;
+    private final long maxSize;
+    private final KeyCodec codec;
+    private final LongLruIndex entries = new LongLruIndex();
+    private final SizeBuckets buckets = new SizeBuckets(entries);
+    private long size;
+    private int redundantOpCount;
+    private Writer journalWriter;
+    private boolean loaded;
+
+    public DiskIndex(File directory, long maxSize, KeyCodec codec) {
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
+        this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+        this.maxSize = maxSize;
+        this.codec = codec;
+    }
+
+    /**
+     * Reads the journal, or rebuilds it from the directory contents if it is missing or
+     * unreadable (first run after an upgrade, or a corrupted journal).
+     */
+    @Override
+    public synchronized void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        if (journalFileBackup.exists()) {
+            if (journalFile.exists()) {
+                journalFileBackup.delete();
+            } else {
+                renameTo(journalFileBackup, journalFile);
+            }
+        }
+        if (journalFile.exists()) {
+            try {
+                readJournal();
+                journalWriter = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8));
+                deleteFiles(trimToSize());
+                return;
+            } catch (IOException e) {
+                entries.clear();
+                buckets.clear();
+                size = 0;
+            }
+        }
+        scanDirectory();
+        rebuildJournal();
+        deleteFiles(trimToSize());
+    }
+
+    public File fileFor(long key) {
+        return new File(directory, codec.name(key) + FILE_EXTENSION);
+    }
+
+    @Override
+    public synchronized boolean contains(long key) {
+        ensureLoaded();
+        return entries.contains(key);
+    }
+
+    @Override
+    public synchronized int ceilingSize(long combo, int size) {
+        ensureLoaded();
+        return buckets.ceiling(combo, size);
+    }
+
+    @Override
+    public synchronized int floorSize(long combo, int size) {
+        ensureLoaded();
+        return buckets.floor(combo, size);
+    }
+
+    @Override
+    public synchronized void put(long key, long length) {
+        ensureLoaded();
+        long previous = entries.put(key, length, -1);
+        if (previous >= 0) {
+            size -= previous;
+            redundantOpCount++;
+        } else {
+            buckets.add(key);
+        }
+        size += length;
+        appendLine(CLEAN, key, length, true);
+    }
+
+    @Override
+    public synchronized void touch(long key) {
+        ensureLoaded();
+        if (!entries.touch(key)) {
+            return;
+        }
+        redundantOpCount++;
+        appendLine(READ, key, -1, false);
+    }
+
+    @Override
+    public synchronized void remove(long key) {
+        ensureLoaded();
+        long length = entries.remove(key, -1);
+        if (length < 0) {
+            return;
+        }
+        size -= length;
+        redundantOpCount++;
+        buckets.remove(key);
+        appendLine(REMOVE, key, -1, true);
+    }
+
+    @Override
+    public synchronized void clear() {
+        loaded = true;
+        closeWriter();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        entries.clear();
+        buckets.clear();
+        size = 0;
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        ensureLoaded();
+        return size;
+    }
+
+    @Override
+    public synchronized int entryCount() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    @Override
+    public synchronized boolean needsMaintenance() {
+        return size > maxSize || isCompactionDue();
+    }
+
+    private void ensureLoaded() {
+        try {
+            load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drops least recently used entries until the index fits in its budget and returns
+     * their keys. The files themselves are left for the caller to delete.
+     */
+    @Override
+    public synchronized long[] trimToSize() {
+        ensureLoaded();
+        long[] evicted = NO_KEYS;
+        int count = 0;
+        while (size > maxSize && !entries.isEmpty()) {
+            long key = entries.keyAt(entries.eldest());
+            size -= entries.remove(key, 0);
+            redundantOpCount++;
+            buckets.remove(key);
+            appendLine(REMOVE, key, -1, false);
+            if (count == evicted.length) {
+                evicted = Arrays.copyOf(evicted, Math.max(8, count * 2));
+            }
+            evicted[count++] = key;
+        }
+        flushWriter();
+        return count == evicted.length ? evicted : Arrays.copyOf(evicted, count);
+    }
+
+    private void deleteFiles(long[] keys) {
+        for (long key : keys) {
+            fileFor(key).delete();
+        }
+    }
+
+    private void readJournal() throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), UTF_8))) {
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String blank = reader.readLine();
+            if (!MAGIC.equals(magic) || !VERSION.equals(version) || !"".equals(blank)) {
+                throw new IOException("unexpected journal header: [" + magic + ", " + version + "]");
+            }
+
+            Set<String> orphans = new LinkedHashSet<>();
+            int lineCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                readJournalLine(line, orphans);
+                lineCount++;
+            }
+            redundantOpCount = lineCount - entries.size();
+            for (String name : orphans) {
+                new File(directory, name + FILE_EXTENSION).delete();
+            }
+        }
+        buckets.rebuild();
+    }
+
+    /** Replays one line. Entries without a packed key are collected in {@code orphans}. */
+    private void readJournalLine(String line, Set<String> orphans) throws IOException {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            throw new IOException("unexpected journal line: " + line);
+        }
+        long key = codec.decode(parts[1]);
+        if (CLEAN.equals(parts[0]) && parts.length == 3) {
+            long length;
+            try {
+                length = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException("unexpected journal line: " + line);
+            }
+            if (key == PackedKeys.NO_KEY) {
+                orphans.add(parts[1]);
+                return;
+            }
+            long previous = entries.put(key, length, -1);
+            if (previous >= 0) {
+                size -= previous;
+            }
+            size += length;
+        } else if (READ.equals(parts[0]) && parts.length == 2) {
+            entries.touch(key);
+        } else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+            if (key == PackedKeys.NO_KEY) {
+                orphans.remove(parts[1]);
+                return;
+            }
+            long previous = entries.remove(key, -1);
+            if (previous >= 0) {
+                size -= previous;
+            }
+        } else {
+            throw new IOException("unexpected journal line: " + line);
+        }
+    }
+
+    /**
+     * Seeds the index from the files already on disk, oldest first. Only used when no
+     * usable journal exists.
+     */
+    private void scanDirectory() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        // Comparator.comparingLong needs API 24.
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        for (int i : order) {
+            String name = files[i].getName();
+            if (!files[i].isFile() || !name.endsWith(FILE_EXTENSION) || name.endsWith(SHARE_SUFFIX)) {
+                continue;
+            }
+            long key = codec.decode(name.substring(0, name.length() - FILE_EXTENSION.length()));
+            if (key == PackedKeys.NO_KEY) {
+                files[i].delete();
+                continue;
+            }
+            long length = files[i].length();
+            entries.put(key, length, -1);
+            buckets.add(key);
+            size += length;
+        }
+    }
+
+    private boolean isCompactionDue() {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= entries.size();
+    }
+
+    @Override
+    public synchronized void compactIfNeeded() {
+        if (isCompactionDue()) {
+            try {
+                rebuildJournal();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void rebuildJournal() throws IOException {
+        closeWriter();
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(journalFileTmp), UTF_8))) {
+            writer.write(MAGIC);
+            writer.write('\n');
+            writer.write(VERSION);
+            writer.write('\n');
+            writer.write('\n');
+            for (int entry = entries.eldest(); entry != LongLruIndex.NONE; entry = entries.newer(entry)) {
+                writeLine(writer, CLEAN, entries.keyAt(entry), entries.valueAt(entry));
+            }
+        }
+        if (journalFile.exists()) {
+            renameTo(journalFile, journalFileBackup);
+        }
+        renameTo(journalFileTmp, journalFile);
+        journalFileBackup.delete();
+        redundantOpCount = 0;
+        journalWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8));
+    }
+
+    /** Appends one operation. A negative {@code length} is left out of the line. */
+    private void appendLine(String op, long key, long length, boolean flush) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            writeLine(journalWriter, op, key, length);
+            if (flush) {
+                journalWriter.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeLine(Writer writer, String op, long key, long length) throws IOException {
+        writer.write(op);
+        writer.write(' ');
+        codec.writeName(key, writer);
+        if (length >= 0) {
+            writer.write(' ');
+            writer.write(Long.toString(length));
+        }
+        writer.write('\n');
+    }
+
+    private void flushWriter() {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeWriter() {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        journalWriter = null;
+    }
+
+    private static void renameTo(File from, File to) throws IOException {
+        if (to.exists() && !to.delete()) {
+            throw new FileNotFoundException("cannot delete " + to);
+        }
+        if (!from.renameTo(to)) {
+            throw new IOException("cannot rename " + from + " to " + to);
+        }
+    }
+}
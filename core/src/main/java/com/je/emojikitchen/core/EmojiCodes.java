@@ -0,0 +1,80 @@
+package com.je.emojikitchen.core;
+
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Emoji codes as used by the API and {@code R.array.emoji_codes}: lowercase hex codepoints
+ * joined by {@code '-'}, such as {@code 1f468-200d-1f373}. A trailing {@code -fe0f}
+ * variation selector is not part of the glyph.
+ */
+public final class EmojiCodes {
+    private static final String VARIATION_SELECTOR = "-fe0f";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private EmojiCodes() {
+    }
+
+    /**
+     * Returns the codepoints of {@code code} without a trailing variation selector, or null
+     * if it is not a codepoint sequence.
+     */
+    public static int[] parse(String code) {
+        int end = code.endsWith(VARIATION_SELECTOR)
+                ? code.length() - VARIATION_SELECTOR.length() : code.length();
+        int count = end > 0 ? 1 : 0;
+        for (int i = 0; i < end; i++) {
+            if (code.charAt(i) == '-') {
+                count++;
+            }
+        }
+        int[] codePoints = new int[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int separator = code.indexOf('-', start);
+            if (separator < 0 || separator > end) {
+                separator = end;
+            }
+            codePoints[i] = parseHex(code, start, separator);
+            if (codePoints[i] < 0) {
+                return null;
+            }
+            start = separator + 1;
+        }
+        return codePoints;
+    }
+
+    /** The glyph string of {@code code}, or the code itself if it does not parse. */
+    public static String toGlyph(String code) {
+        int[] codePoints = parse(code);
+        return codePoints != null ? new String(codePoints, 0, codePoints.length) : code;
+    }
+
+    /** CRC32 of the codes joined with {@code '\n'}, for files that store pairs by position. */
+    public static int checksum(String[] codes) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < codes.length; i++) {
+            if (i > 0) {
+                crc.update('\n');
+            }
+            crc.update(codes[i].getBytes(UTF_8));
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Parses {@code code[start, end)} as a codepoint, or returns -1 if it is not one. */
+    private static int parseHex(String code, int start, int end) {
+        if (start >= end || end - start > 6) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(code.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return Character.isValidCodePoint(value) ? value : -1;
+    }
+}
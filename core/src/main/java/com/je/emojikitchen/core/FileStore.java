@@ -0,0 +1,174 @@
+package com.je.emojikitchen.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ImageStore} with one PNG file per variant, named after {@link CacheKeys}, and a
+ * {@link DiskIndex} journal for the LRU bookkeeping. Entries are written to a temp file
+ * first and renamed into place once complete, so a crash mid-write never leaves a
+ * truncated PNG behind, and every entry can be handed out as a file of its own.
+ *
+ * <p>Lock order: a stripe lock, then the index.
+ */
+public class FileStore implements ImageStore {
+    static final String TMP_DIR = "tmp";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int LOCK_STRIPES = 16;
+
+    private final File tmpDir;
+    private final KeyCodec codec;
+    private final DiskIndex index;
+    // Serializes committing and deleting the file of any one key.
+    private final Object[] fileLocks = new Object[LOCK_STRIPES];
+
+    public FileStore(File directory, long maxSize, KeyCodec codec) {
+        this.tmpDir = new File(directory, TMP_DIR);
+        this.codec = codec;
+        this.index = new DiskIndex(directory, maxSize, codec);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            fileLocks[i] = new Object();
+        }
+    }
+
+    /** Replays the journal and drops writes that were interrupted before their rename. */
+    @Override
+    public void load() throws IOException {
+        index.load();
+        File[] files = tmpDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(long key) {
+        return index.contains(key);
+    }
+
+    @Override
+    public int ceilingSize(long combo, int size) {
+        return index.ceilingSize(combo, size);
+    }
+
+    @Override
+    public int floorSize(long combo, int size) {
+        return index.floorSize(combo, size);
+    }
+
+    @Override
+    public long write(long key, Content content) throws IOException {
+        if (!tmpDir.exists()) {
+            tmpDir.mkdirs();
+        }
+        File tmp = File.createTempFile(codec.name(key), TMP_SUFFIX, tmpDir);
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                content.writeTo(out);
+                out.getFD().sync();
+            }
+            synchronized (lockFor(key)) {
+                File file = index.fileFor(key);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("cannot rename " + tmp + " to " + file);
+                }
+                long length = file.length();
+                index.put(key, length);
+                return length;
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /** Reads the whole file onto the heap, variants are small enough for that. */
+    @Override
+    public ByteBuffer read(long key) throws IOException {
+        if (!index.contains(key)) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(index.fileFor(key))) {
+            long length = in.getChannel().size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("entry too large: " + length);
+            }
+            byte[] bytes = new byte[(int) length];
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return ByteBuffer.wrap(bytes, 0, read);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public File file(long key) {
+        if (!index.contains(key)) {
+            return null;
+        }
+        File file = index.fileFor(key);
+        return file.exists() ? file : null;
+    }
+
+    @Override
+    public void touch(long key) {
+        index.touch(key);
+    }
+
+    @Override
+    public void remove(long key) {
+        synchronized (lockFor(key)) {
+            index.remove(key);
+            index.fileFor(key).delete();
+        }
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+
+    @Override
+    public long size() {
+        return index.size();
+    }
+
+    @Override
+    public int entryCount() {
+        return index.entryCount();
+    }
+
+    @Override
+    public boolean needsMaintenance() {
+        return index.needsMaintenance();
+    }
+
+    @Override
+    public void maintain() {
+        for (long key : index.trimToSize()) {
+            synchronized (lockFor(key)) {
+                // The key may have been written again since it was evicted.
+                if (!index.contains(key)) {
+                    index.fileFor(key).delete();
+                }
+            }
+        }
+        index.compactIfNeeded();
+    }
+
+    private Object lockFor(long key) {
+        return fileLocks[(PackedKeys.hash(key) & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
@@ -0,0 +1,68 @@
+package com.je.emojikitchen.core;
+
+/**
+ * Pixel sizes a combination can be requested at, and the arithmetic for decoding a stored
+ * variant at another size.
+ */
+public final class ImageSizes {
+    public static final int MIN_SIZE = 16;
+    public static final int MAX_SIZE = 512;
+    public static final int SIZE_STEP = 16;
+    /** Sizes offered by the slider, smallest first. */
+    public static final int[] SLIDER_SIZES = {32, 64, 128, 256, 512};
+
+    private ImageSizes() {
+    }
+
+    /** Rounds {@code value} down to a multiple of {@link #SIZE_STEP} within the size range. */
+    public static int normalize(int value) {
+        return Math.max(MIN_SIZE, Math.min(MAX_SIZE, (value / SIZE_STEP) * SIZE_STEP));
+    }
+
+    /** Whether {@code size} is one of {@link #SLIDER_SIZES}. */
+    public static boolean isSliderSize(int size) {
+        for (int sliderSize : SLIDER_SIZES) {
+            if (sliderSize == size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Index of the slider size closest to {@code size}, the smaller one on a tie. */
+    public static int sliderIndexFor(int size) {
+        int index = 0;
+        int minDiff = Math.abs(SLIDER_SIZES[0] - size);
+        for (int i = 1; i < SLIDER_SIZES.length; i++) {
+            int diff = Math.abs(SLIDER_SIZES[i] - size);
+            if (diff < minDiff) {
+                minDiff = diff;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /** Slider size at {@code index}, clamped to the valid range. */
+    public static int sliderSize(int index) {
+        return SLIDER_SIZES[Math.max(0, Math.min(index, SLIDER_SIZES.length - 1))];
+    }
+
+    /**
+     * Largest power of two to subsample a {@code width} x {@code height} image by while
+     * both sides stay at least {@code reqWidth} x {@code reqHeight}.
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+            int halfHeight = height / 2;
+            int halfWidth = width / 2;
+
+            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+}
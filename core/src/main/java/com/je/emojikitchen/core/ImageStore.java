@@ -0,0 +1,73 @@
+package com.je.emojikitchen.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Size-bounded LRU storage for the encoded images of the emoji cache, keyed by
+ * {@link PackedKeys}. Unlike a {@link CacheIndex}, a store owns the bytes as well as the
+ * bookkeeping, so each engine can lay them out as it likes. Every method is thread-safe.
+ */
+public interface ImageStore {
+    /** Produces the bytes of one entry. */
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Loads the persisted state once. Every other method loads it first if needed. */
+    void load() throws IOException;
+
+    boolean contains(long key);
+
+    /** See {@link CacheIndex#ceilingSize}. */
+    int ceilingSize(long combo, int size);
+
+    /** See {@link CacheIndex#floorSize}. */
+    int floorSize(long combo, int size);
+
+    /**
+     * Stores everything {@code content} writes as the bytes of {@code key}, replacing any
+     * previous bytes once complete, and makes it the most recently used entry. Returns the
+     * number of bytes stored. A failed write leaves the previous bytes in place.
+     */
+    long write(long key, Content content) throws IOException;
+
+    /**
+     * Returns the bytes of {@code key} between position and limit, or null if it is not
+     * stored. The buffer may share memory with the store and must not be written to. It
+     * stays valid after the entry is replaced or removed. Does not change the access
+     * order, see {@link #touch}.
+     */
+    ByteBuffer read(long key) throws IOException;
+
+    /**
+     * Returns the file holding exactly the bytes of {@code key}, or null if it is not
+     * stored or the engine does not keep entries in files of their own.
+     */
+    File file(long key);
+
+    /** Marks {@code key} as the most recently used entry, if present. */
+    void touch(long key);
+
+    void remove(long key);
+
+    /** Drops every entry. */
+    void clear();
+
+    /** Total length of all entries, in bytes. */
+    long size();
+
+    int entryCount();
+
+    /** Whether {@link #maintain()} has work to do. */
+    boolean needsMaintenance();
+
+    /**
+     * Evicts least recently used entries until the store fits in its budget and reclaims
+     * the space of removed entries. Meant for a background thread, reads and writes keep
+     * working while it runs.
+     */
+    void maintain();
+}
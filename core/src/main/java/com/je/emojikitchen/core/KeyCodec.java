@@ -0,0 +1,82 @@
+package com.je.emojikitchen.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * Converts between {@link PackedKeys} and the {@link CacheKeys} names used for files and
+ * journal lines, given the emoji code list the positions refer to. Names of codes outside
+ * the list, or of sizes outside {@code 1..ImageSizes.MAX_SIZE}, have no packed key.
+ */
+public final class KeyCodec {
+    private final String[] codes;
+    private final HashMap<String, Integer> positions;
+
+    public KeyCodec(String[] codes) {
+        if (codes.length > PackedKeys.MAX_POSITION + 1) {
+            throw new IllegalArgumentException("too many codes: " + codes.length);
+        }
+        this.codes = codes.clone();
+        this.positions = new HashMap<>(codes.length * 2);
+        for (int i = 0; i < codes.length; i++) {
+            positions.put(codes[i], i);
+        }
+    }
+
+    /** Returns the position of {@code code}, or -1 if it is not in the list. */
+    public int positionOf(String code) {
+        Integer position = positions.get(code);
+        return position != null ? position : -1;
+    }
+
+    /** Returns the key of a variant, or {@link PackedKeys#NO_KEY} if it has none. */
+    public long encode(String emoji1, String emoji2, int size) {
+        int first = positionOf(emoji1);
+        int second = positionOf(emoji2);
+        if (first < 0 || second < 0 || size < 1 || size > ImageSizes.MAX_SIZE) {
+            return PackedKeys.NO_KEY;
+        }
+        return PackedKeys.pack(first, second, size);
+    }
+
+    /** The {@link CacheKeys#variantKey} name of {@code key}. */
+    public String name(long key) {
+        return CacheKeys.variantKey(codes[PackedKeys.first(key)], codes[PackedKeys.second(key)],
+                PackedKeys.size(key));
+    }
+
+    /** Writes {@link #name(long)} without building it as a string first. */
+    public void writeName(long key, Writer out) throws IOException {
+        out.write(CacheKeys.PREFIX);
+        out.write(codes[PackedKeys.first(key)]);
+        out.write('_');
+        out.write(codes[PackedKeys.second(key)]);
+        out.write('_');
+        int size = PackedKeys.size(key);
+        for (int divisor = size >= 100 ? 100 : size >= 10 ? 10 : 1; divisor > 0; divisor /= 10) {
+            out.write('0' + size / divisor % 10);
+        }
+        out.write(CacheKeys.SIZE_SUFFIX);
+    }
+
+    /** Parses a variant name, or returns {@link PackedKeys#NO_KEY} if it has no key. */
+    public long decode(String name) {
+        int size = CacheKeys.sizeOf(name);
+        if (size < 1 || size > ImageSizes.MAX_SIZE || !name.startsWith(CacheKeys.PREFIX)) {
+            return PackedKeys.NO_KEY;
+        }
+        String combo = name.substring(CacheKeys.PREFIX.length(), name.lastIndexOf('_'));
+        // Codes contain '-' but never '_', so the one underscore left splits the pair.
+        int separator = combo.indexOf('_');
+        if (separator < 0 || combo.indexOf('_', separator + 1) >= 0) {
+            return PackedKeys.NO_KEY;
+        }
+        int first = positionOf(combo.substring(0, separator));
+        int second = positionOf(combo.substring(separator + 1));
+        if (first < 0 || second < 0) {
+            return PackedKeys.NO_KEY;
+        }
+        return PackedKeys.pack(first, second, size);
+    }
+}
@@ -0,0 +1,129 @@
+package com.je.emojikitchen.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency distribution over fixed buckets, from 100 microseconds to 10 seconds plus one
+ * overflow bucket. Recording is a bucket scan and a few atomic adds, with no locking or
+ * allocation, so it is cheap enough to leave on in every build. Percentiles are reported
+ * as the upper bound of the bucket they fall in, which is as precise as the buckets allow.
+ */
+public final class LatencyHistogram {
+    /** Inclusive upper bounds of every bucket but the last, in microseconds. */
+    static final long[] BOUNDS_MICROS = {
+            100, 250, 500,
+            1_000, 2_500, 5_000,
+            10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000,
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /** Records one sample of {@code nanos}. Negative samples are counted as zero. */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        // AtomicLong.accumulateAndGet needs API 24.
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // Another thread raised the maximum first, check against the new value.
+        }
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, count.get(), sumMicros.get(), maxMicros.get());
+    }
+
+    /**
+     * A copy of the histogram at one point in time. Samples recorded while the copy was
+     * taken may show up in some fields and not others.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long meanMicros() {
+            return count > 0 ? sumMicros / count : 0;
+        }
+
+        public long maxMicros() {
+            return maxMicros;
+        }
+
+        /** Upper bound of the bucket holding the {@code percentile}th sample, or 0 if empty. */
+        public long percentileMicros(double percentile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BOUNDS_MICROS[i], maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        /** Number of buckets, the last one being the overflow bucket. */
+        public int bucketCount() {
+            return counts.length;
+        }
+
+        public long bucketAt(int index) {
+            return counts[index];
+        }
+
+        /** Upper bound of bucket {@code index} in microseconds, or -1 for the overflow bucket. */
+        public static long bucketBoundMicros(int index) {
+            return index < BOUNDS_MICROS.length ? BOUNDS_MICROS[index] : -1;
+        }
+    }
+}
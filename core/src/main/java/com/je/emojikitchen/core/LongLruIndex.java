@@ -0,0 +1,249 @@
+package com.je.emojikitchen.core;
+
+import java.util.Arrays;
+
+/**
+ * Map from {@code long} keys to {@code long} values that remembers access order, without
+ * boxing or per-entry objects. Entries live in parallel arrays and are chained into a
+ * doubly linked list from least to most recently used; an open-addressing table with
+ * linear probing maps keys to entries. Lookups allocate nothing, and an entry costs about
+ * 32 bytes against well over 100 for a {@code LinkedHashMap<String, Long>} entry with its
+ * key and value.
+ *
+ * <p>Entries are addressed by an {@code int} handle for iteration, see {@link #eldest()}.
+ * Handles stay valid until their entry is removed. Not thread safe.
+ */
+public final class LongLruIndex {
+    public static final int NONE = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // Entry handle + 1 per slot, 0 for an empty slot.
+    private int[] table;
+    private long[] keys;
+    private long[] values;
+    private int[] prev;
+    private int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    // Removed entries are reused before the arrays grow, chained through next.
+    private int free = NONE;
+    private int allocated;
+    private int size;
+
+    public LongLruIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongLruIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize) {
+            capacity <<= 1;
+        }
+        table = new int[capacity * 2];
+        keys = new long[capacity];
+        values = new long[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        return find(key) != NONE;
+    }
+
+    /** Returns the value of {@code key}, or {@code missing}. Does not change the order. */
+    public long get(long key, long missing) {
+        int entry = find(key);
+        return entry != NONE ? values[entry] : missing;
+    }
+
+    /**
+     * Sets the value of {@code key} and makes it the most recently used entry. Returns the
+     * previous value, or {@code missing} if the key is new.
+     */
+    public long put(long key, long value, long missing) {
+        int entry = find(key);
+        if (entry != NONE) {
+            long previous = values[entry];
+            values[entry] = value;
+            moveToTail(entry);
+            return previous;
+        }
+        entry = allocate();
+        keys[entry] = key;
+        values[entry] = value;
+        linkTail(entry);
+        size++;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insertSlot(entry);
+        }
+        return missing;
+    }
+
+    /**
+     * Sets the value of {@code key} without changing the order. Returns false if it is
+     * absent.
+     */
+    public boolean replace(long key, long value) {
+        int entry = find(key);
+        if (entry == NONE) {
+            return false;
+        }
+        values[entry] = value;
+        return true;
+    }
+
+    /** Makes {@code key} the most recently used entry. Returns false if it is absent. */
+    public boolean touch(long key) {
+        int entry = find(key);
+        if (entry == NONE) {
+            return false;
+        }
+        moveToTail(entry);
+        return true;
+    }
+
+    /** Removes {@code key} and returns its value, or {@code missing} if it was absent. */
+    public long remove(long key, long missing) {
+        int mask = table.length - 1;
+        for (int slot = PackedKeys.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry == NONE) {
+                return missing;
+            }
+            if (keys[entry] == key) {
+                deleteSlot(slot);
+                unlink(entry);
+                next[entry] = free;
+                free = entry;
+                size--;
+                return values[entry];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        head = NONE;
+        tail = NONE;
+        free = NONE;
+        allocated = 0;
+        size = 0;
+    }
+
+    /** Handle of the least recently used entry, or {@link #NONE} if empty. */
+    public int eldest() {
+        return head;
+    }
+
+    /** Handle of the entry used right after {@code entry}, or {@link #NONE}. */
+    public int newer(int entry) {
+        return next[entry];
+    }
+
+    public long keyAt(int entry) {
+        return keys[entry];
+    }
+
+    public long valueAt(int entry) {
+        return values[entry];
+    }
+
+    private int find(long key) {
+        int mask = table.length - 1;
+        for (int slot = PackedKeys.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry == NONE || keys[entry] == key) {
+                return entry;
+            }
+        }
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int entry = free;
+            free = next[entry];
+            return entry;
+        }
+        if (allocated == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+
+    private void insertSlot(int entry) {
+        int mask = table.length - 1;
+        int slot = PackedKeys.hash(keys[entry]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    /** Empties {@code slot} and shifts later entries of the probe run back into the gap. */
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int gap = slot;
+        for (int i = (gap + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int home = PackedKeys.hash(keys[table[i] - 1]) & mask;
+            // Move the entry if its home slot is not cyclically within (gap, i].
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            insertSlot(entry);
+        }
+    }
+
+    private void linkTail(int entry) {
+        prev[entry] = tail;
+        next[entry] = NONE;
+        if (tail != NONE) {
+            next[tail] = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(int entry) {
+        if (prev[entry] != NONE) {
+            next[prev[entry]] = next[entry];
+        } else {
+            head = next[entry];
+        }
+        if (next[entry] != NONE) {
+            prev[next[entry]] = prev[entry];
+        } else {
+            tail = prev[entry];
+        }
+    }
+
+    private void moveToTail(int entry) {
+        if (entry != tail) {
+            unlink(entry);
+            linkTail(entry);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.je.emojikitchen.core;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and per-stage latency histograms for the cache and download
+ * paths, with text and JSON dumps of their current values. Counting and timing never
+ * lock, so instrumentation stays on in release builds. Gauges are read only when a dump
+ * is taken.
+ */
+public final class Metrics {
+    public enum Counter {
+        /** A lookup answered by a decoded bitmap already in memory. */
+        MEMORY_HIT("memory_hit"),
+        /** A lookup answered by decoding a stored variant. */
+        DISK_HIT("disk_hit"),
+        /** A lookup with no usable variant stored, which sends the caller to the network. */
+        CACHE_MISS("cache_miss"),
+        /** A stored variant that could not be decoded and was dropped. */
+        DECODE_FAILURE("decode_failure"),
+        POOL_HIT("pool_hit"),
+        POOL_MISS("pool_miss"),
+        NETWORK_OK("network_ok"),
+        NETWORK_NOT_FOUND("network_not_found"),
+        NETWORK_ERROR("network_error"),
+        /** A request that joined a download already queued or running for the same variant. */
+        REQUEST_SHARED("request_shared"),
+        /** A running download cancelled because nobody waits for it anymore. */
+        REQUEST_CANCELLED("request_cancelled"),
+        BYTES_DOWNLOADED("bytes_downloaded"),
+        /** A memory pressure signal that shrank the in-memory bitmaps. */
+        MEMORY_TRIM("memory_trim");
+
+        final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    public enum Stage {
+        /** From enqueueing a request until its response headers arrive. */
+        NETWORK("network"),
+        /** Streaming a response body into the cache. */
+        STORE("store"),
+        /** Decoding a stored PNG at full resolution, see {@link #SCALE}. */
+        DECODE("decode"),
+        /** Resampling a decoded bitmap to the requested size. */
+        SCALE("scale"),
+        /** Compressing a bitmap to PNG, for an export or a derived variant. */
+        ENCODE("encode"),
+        /** A whole share or save, from the tap until the file is written. */
+        EXPORT("export");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    /** A value sampled when a dump is taken, such as the current size of a cache. */
+    public interface Gauge {
+        long value();
+    }
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final LinkedHashMap<String, Gauge> gauges = new LinkedHashMap<>();
+
+    Metrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+    public void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].recordSince(startNanos);
+    }
+
+    /** Registers {@code gauge} under {@code name}, replacing any gauge of the same name. */
+    public void registerGauge(String name, Gauge gauge) {
+        synchronized (gauges) {
+            gauges.put(name, gauge);
+        }
+    }
+
+    /** Zeroes every counter and histogram. Gauges keep reporting live values. */
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /** Share of lookups answered from memory or disk, between 0 and 1, or 0 without lookups. */
+    public double hitRate() {
+        long hits = get(Counter.MEMORY_HIT) + get(Counter.DISK_HIT);
+        long lookups = hits + get(Counter.CACHE_MISS);
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    private Map<String, Long> sampleGauges() {
+        LinkedHashMap<String, Long> values = new LinkedHashMap<>();
+        synchronized (gauges) {
+            for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+                values.put(gauge.getKey(), gauge.getValue().value());
+            }
+        }
+        return values;
+    }
+
+    /** A fixed-width table for reading on a phone screen or in {@code dumpsys} output. */
+    public String dumpText() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "hit rate %.1f%%%n", hitRate() * 100));
+        out.append(String.format(Locale.US, "%n%-18s %12s%n", "counter", "value"));
+        for (Counter counter : Counter.values()) {
+            out.append(String.format(Locale.US, "%-18s %12d%n", counter.key, get(counter)));
+        }
+        Map<String, Long> gaugeValues = sampleGauges();
+        if (!gaugeValues.isEmpty()) {
+            out.append(String.format(Locale.US, "%n%-18s %12s%n", "gauge", "value"));
+            for (Map.Entry<String, Long> gauge : gaugeValues.entrySet()) {
+                out.append(String.format(Locale.US, "%-18s %12d%n", gauge.getKey(), gauge.getValue()));
+            }
+        }
+        out.append(String.format(Locale.US, "%n%-8s %7s %8s %8s %8s %8s %8s%n",
+                "ms", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = histogram(stage).snapshot();
+            out.append(String.format(Locale.US, "%-8s %7d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    stage.key, snapshot.count(),
+                    snapshot.meanMicros() / 1000.0,
+                    snapshot.percentileMicros(50) / 1000.0,
+                    snapshot.percentileMicros(90) / 1000.0,
+                    snapshot.percentileMicros(99) / 1000.0,
+                    snapshot.maxMicros() / 1000.0));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Every counter, gauge and histogram as one JSON object. Latencies are in microseconds,
+     * and each histogram lists its buckets as {@code [upper bound, count]} pairs with a
+     * bound of -1 for the overflow bucket.
+     */
+    public String dumpJson() {
+        StringBuilder out = new StringBuilder("{\"counters\":{");
+        Counter[] counterValues = Counter.values();
+        for (int i = 0; i < counterValues.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(counterValues[i].key).append("\":").append(get(counterValues[i]));
+        }
+        out.append("},\"gauges\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> gauge : sampleGauges().entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('"').append(gauge.getKey()).append("\":").append(gauge.getValue());
+        }
+        out.append("},\"latency_us\":{");
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram.Snapshot snapshot = histogram(stages[i]).snapshot();
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(stages[i].key).append("\":{")
+                    .append("\"count\":").append(snapshot.count())
+                    .append(",\"mean\":").append(snapshot.meanMicros())
+                    .append(",\"p50\":").append(snapshot.percentileMicros(50))
+                    .append(",\"p90\":").append(snapshot.percentileMicros(90))
+                    .append(",\"p99\":").append(snapshot.percentileMicros(99))
+                    .append(",\"max\":").append(snapshot.maxMicros())
+                    .append(",\"buckets\":[");
+            for (int b = 0; b < snapshot.bucketCount(); b++) {
+                if (b > 0) {
+                    out.append(',');
+                }
+                out.append('[').append(LatencyHistogram.Snapshot.bucketBoundMicros(b))
+                        .append(',').append(snapshot.bucketAt(b)).append(']');
+            }
+            out.append("]}");
+        }
+        return out.append("}}").toString();
+    }
+}
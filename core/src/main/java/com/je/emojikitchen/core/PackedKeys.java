@@ -0,0 +1,49 @@
+package com.je.emojikitchen.core;
+
+/**
+ * Cache keys packed into a {@code long}: the catalog positions of both emoji and the pixel
+ * size, laid out as {@code first << 32 | second << 16 | size}. Clearing the size gives the
+ * key of the combination, shared by all of its variants. Keys are never negative, so -1
+ * can stand for "no key".
+ */
+public final class PackedKeys {
+    public static final long NO_KEY = -1;
+    public static final int MAX_POSITION = 0x7fff;
+    public static final int MAX_SIZE = 0xffff;
+
+    private PackedKeys() {
+    }
+
+    public static long pack(int first, int second, int size) {
+        return ((long) first << 32) | ((long) second << 16) | size;
+    }
+
+    public static int first(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int second(long key) {
+        return (int) (key >>> 16) & 0xffff;
+    }
+
+    public static int size(long key) {
+        return (int) key & 0xffff;
+    }
+
+    /** The key of the combination {@code key} is a variant of. */
+    public static long combo(long key) {
+        return key & ~0xffffL;
+    }
+
+    public static long withSize(long combo, int size) {
+        return combo | size;
+    }
+
+    /** Spreads the bits of {@code key} for use as a hash table index. */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
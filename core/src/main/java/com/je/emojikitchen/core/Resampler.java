@@ -0,0 +1,276 @@
+package com.je.emojikitchen.core;
+
+import java.util.Arrays;
+
+/**
+ * Separable Lanczos-3 resampling of ARGB pixels, for deriving every variant size from one
+ * master image. Downscaling widens the filter by the scale factor, so every source pixel
+ * contributes and fine strokes do not alias the way power-of-two subsampling followed by
+ * a bilinear scale does. Colors are filtered premultiplied, so transparent edges do not
+ * pick up dark fringes, and the overshoot of the negative lobes is clamped.
+ *
+ * <p>Large reductions first average whole blocks of pixels until the image is at most
+ * {@link #REDUCING_GAP} times the target, then run the filter on that. Box averaging by
+ * an integer factor is exact, and it cuts the filter's work by the factor squared.
+ *
+ * <p>Pixels are non-premultiplied {@code 0xAARRGGBB} ints in row-major order, as returned
+ * by {@code Bitmap.getPixels}. Callers that resample often can pass the same
+ * {@link Buffers} to every call, so the intermediate arrays are allocated once.
+ */
+public final class Resampler {
+    static final int LOBES = 3;
+    static final int REDUCING_GAP = 2;
+
+    /**
+     * Work arrays for one resize at a time, grown as needed and kept for the next call.
+     * Not thread-safe, keep one per thread.
+     */
+    public static final class Buffers {
+        private int[] reduced = new int[0];
+        private float[] horizontal = new float[0];
+        private float[] premultiplied = new float[0];
+        private float[] row = new float[0];
+        private Contributions columns;
+        private Contributions rows;
+    }
+
+    private Resampler() {
+    }
+
+    /** Returns {@code src} resampled to {@code dstWidth} x {@code dstHeight}. */
+    public static int[] resize(int[] src, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        int[] dst = new int[dstWidth * dstHeight];
+        resize(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        return dst;
+    }
+
+    /** Resamples {@code src} into the first {@code dstWidth * dstHeight} pixels of {@code dst}. */
+    public static void resize(int[] src, int srcWidth, int srcHeight,
+                              int[] dst, int dstWidth, int dstHeight) {
+        resize(src, srcWidth, srcHeight, dst, dstWidth, dstHeight, new Buffers());
+    }
+
+    /**
+     * Like {@link #resize(int[], int, int, int[], int, int)}, taking its work arrays from
+     * {@code buffers}. Only the first {@code srcWidth * srcHeight} pixels of {@code src}
+     * are read, so it may be a reused array larger than the image.
+     */
+    public static void resize(int[] src, int srcWidth, int srcHeight,
+                              int[] dst, int dstWidth, int dstHeight, Buffers buffers) {
+        if (srcWidth == dstWidth && srcHeight == dstHeight) {
+            System.arraycopy(src, 0, dst, 0, dstWidth * dstHeight);
+            return;
+        }
+        int factor = 1;
+        while (srcWidth / (factor * 2) >= dstWidth * REDUCING_GAP
+                && srcHeight / (factor * 2) >= dstHeight * REDUCING_GAP) {
+            factor *= 2;
+        }
+        if (factor > 1) {
+            int width = (srcWidth + factor - 1) / factor;
+            int height = (srcHeight + factor - 1) / factor;
+            buffers.reduced = grow(buffers.reduced, width * height);
+            reduce(src, srcWidth, srcHeight, factor, buffers.reduced);
+            src = buffers.reduced;
+            srcWidth = width;
+            srcHeight = height;
+        }
+        Contributions columns = buffers.columns = Contributions.reuse(buffers.columns, srcWidth, dstWidth);
+        Contributions rows = buffers.rows = Contributions.reuse(buffers.rows, srcHeight, dstHeight);
+
+        // Horizontal pass into premultiplied floats, srcHeight rows of dstWidth pixels. Each
+        // source row is premultiplied once up front, every pixel feeds several taps.
+        float[] horizontal = buffers.horizontal = grow(buffers.horizontal, dstWidth * srcHeight * 4);
+        float[] premultiplied = buffers.premultiplied = grow(buffers.premultiplied, srcWidth * 4);
+        for (int y = 0; y < srcHeight; y++) {
+            int srcRow = y * srcWidth;
+            boolean empty = true;
+            for (int x = 0, k = 0; x < srcWidth; x++, k += 4) {
+                int pixel = src[srcRow + x];
+                int alpha = pixel >>> 24;
+                float scale = alpha / 255f;
+                premultiplied[k] = alpha;
+                premultiplied[k + 1] = ((pixel >> 16) & 0xff) * scale;
+                premultiplied[k + 2] = ((pixel >> 8) & 0xff) * scale;
+                premultiplied[k + 3] = (pixel & 0xff) * scale;
+                empty &= alpha == 0;
+            }
+            if (empty) {
+                // Emoji are mostly transparent margin, skip filtering it.
+                Arrays.fill(horizontal, y * dstWidth * 4, (y + 1) * dstWidth * 4, 0);
+                continue;
+            }
+            int out = y * dstWidth * 4;
+            for (int x = 0; x < dstWidth; x++) {
+                float a = 0, r = 0, g = 0, b = 0;
+                int offset = columns.offset[x];
+                for (int i = 0, n = columns.count[x]; i < n; i++) {
+                    int in = columns.index[offset + i] * 4;
+                    float weight = columns.weight[offset + i];
+                    a += premultiplied[in] * weight;
+                    r += premultiplied[in + 1] * weight;
+                    g += premultiplied[in + 2] * weight;
+                    b += premultiplied[in + 3] * weight;
+                }
+                horizontal[out++] = a;
+                horizontal[out++] = r;
+                horizontal[out++] = g;
+                horizontal[out++] = b;
+            }
+        }
+
+        // Vertical pass a whole row at a time, walking the intermediate rows in order.
+        int stride = dstWidth * 4;
+        float[] row = buffers.row = grow(buffers.row, stride);
+        for (int y = 0; y < dstHeight; y++) {
+            Arrays.fill(row, 0, stride, 0);
+            int offset = rows.offset[y];
+            for (int i = 0, n = rows.count[y]; i < n; i++) {
+                int in = rows.index[offset + i] * stride;
+                float weight = rows.weight[offset + i];
+                for (int k = 0; k < stride; k++) {
+                    row[k] += horizontal[in + k] * weight;
+                }
+            }
+            int out = y * dstWidth;
+            for (int k = 0; k < stride; k += 4) {
+                dst[out++] = pack(row[k], row[k + 1], row[k + 2], row[k + 3]);
+            }
+        }
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return array.length >= length ? array : new int[length];
+    }
+
+    private static float[] grow(float[] array, int length) {
+        return array.length >= length ? array : new float[length];
+    }
+
+    /**
+     * Averages every {@code factor} x {@code factor} block into {@code dst}, premultiplied.
+     * Blocks cut off by the right or bottom edge average the pixels they have.
+     */
+    private static void reduce(int[] src, int srcWidth, int srcHeight, int factor, int[] dst) {
+        int width = (srcWidth + factor - 1) / factor;
+        int height = (srcHeight + factor - 1) / factor;
+        for (int y = 0; y < height; y++) {
+            int top = y * factor;
+            int bottom = Math.min(top + factor, srcHeight);
+            for (int x = 0; x < width; x++) {
+                int left = x * factor;
+                int right = Math.min(left + factor, srcWidth);
+                long a = 0, r = 0, g = 0, b = 0;
+                for (int sy = top; sy < bottom; sy++) {
+                    for (int sx = sy * srcWidth + left, end = sy * srcWidth + right; sx < end; sx++) {
+                        int pixel = src[sx];
+                        int alpha = pixel >>> 24;
+                        a += alpha;
+                        r += ((pixel >> 16) & 0xff) * alpha;
+                        g += ((pixel >> 8) & 0xff) * alpha;
+                        b += (pixel & 0xff) * alpha;
+                    }
+                }
+                if (a == 0) {
+                    dst[y * width + x] = 0;
+                    continue;
+                }
+                int count = (bottom - top) * (right - left);
+                dst[y * width + x] = (int) ((a + count / 2) / count) << 24
+                        | (int) ((r + a / 2) / a) << 16
+                        | (int) ((g + a / 2) / a) << 8
+                        | (int) ((b + a / 2) / a);
+            }
+        }
+    }
+
+    private static int pack(float a, float r, float g, float b) {
+        int alpha = clamp(Math.round(a), 255);
+        if (alpha == 0) {
+            return 0;
+        }
+        float unpremultiply = 255f / alpha;
+        return alpha << 24
+                | clamp(Math.round(r * unpremultiply), 255) << 16
+                | clamp(Math.round(g * unpremultiply), 255) << 8
+                | clamp(Math.round(b * unpremultiply), 255);
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : value > max ? max : value;
+    }
+
+    static double lanczos(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        if (x <= -LOBES || x >= LOBES) {
+            return 0;
+        }
+        double px = Math.PI * x;
+        return LOBES * Math.sin(px) * Math.sin(px / LOBES) / (px * px);
+    }
+
+    /**
+     * Normalized filter taps for every output coordinate along one axis, flattened into
+     * shared arrays. Taps past the edges are folded onto the edge pixel.
+     */
+    private static final class Contributions {
+        final int srcSize;
+        final int dstSize;
+        final int[] offset;
+        final int[] count;
+        final int[] index;
+        final float[] weight;
+
+        /** Returns {@code cached} if it maps the same sizes, new taps otherwise. */
+        static Contributions reuse(Contributions cached, int srcSize, int dstSize) {
+            if (cached != null && cached.srcSize == srcSize && cached.dstSize == dstSize) {
+                return cached;
+            }
+            return new Contributions(srcSize, dstSize);
+        }
+
+        Contributions(int srcSize, int dstSize) {
+            this.srcSize = srcSize;
+            this.dstSize = dstSize;
+            double scale = (double) srcSize / dstSize;
+            double filterScale = Math.max(1, scale);
+            double support = LOBES * filterScale;
+            int maxTaps = (int) Math.ceil(support) * 2 + 1;
+            offset = new int[dstSize];
+            count = new int[dstSize];
+            index = new int[dstSize * maxTaps];
+            weight = new float[dstSize * maxTaps];
+
+            int next = 0;
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) * scale - 0.5;
+                int left = (int) Math.ceil(center - support);
+                int right = (int) Math.floor(center + support);
+                offset[i] = next;
+                double total = 0;
+                for (int s = left; s <= right; s++) {
+                    double w = lanczos((s - center) / filterScale);
+                    if (w == 0) {
+                        continue;
+                    }
+                    int clamped = s < 0 ? 0 : s >= srcSize ? srcSize - 1 : s;
+                    // Folded taps land on the same pixel, merge them into one.
+                    if (next > offset[i] && index[next - 1] == clamped) {
+                        weight[next - 1] += (float) w;
+                    } else {
+                        index[next] = clamped;
+                        weight[next] = (float) w;
+                        next++;
+                    }
+                    total += w;
+                }
+                count[i] = next - offset[i];
+                for (int t = offset[i]; t < next; t++) {
+                    weight[t] /= total;
+                }
+            }
+        }
+    }
+}
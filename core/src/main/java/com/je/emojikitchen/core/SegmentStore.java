@@ -0,0 +1,691 @@
+package com.je.emojikitchen.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ImageStore} that packs every entry into a few large append-only segment files
+ * instead of one file per variant, so writes create no files, reads open none and
+ * clearing deletes a handful of files whatever the entry count.
+ *
+ * <p>Segments are preallocated to {@link #SEGMENT_SIZE} bytes and mapped into memory
+ * once. Each starts with a header, and records are appended to the newest one:
+ *
+ * <pre>
+ *     segment   int magic | int codes checksum | records
+ *     record    int magic | long key | int length | int crc32 | length bytes
+ * </pre>
+ *
+ * A length of -1 records a removal and carries no bytes. A lookup is one probe of an
+ * in-memory {@link LongLruIndex} from key to segment and offset, and a read hands out a
+ * slice of the mapping without copying. Slices stay valid after their record is
+ * replaced or compacted away, a mapping lives as long as anything references it.
+ *
+ * <p>Keys are {@link PackedKeys}, positions in one list of emoji codes, so the segment
+ * headers and the index carry the {@link EmojiCodes#checksum} of that list. A store
+ * written for another list is deleted on load rather than read with the wrong codes.
+ *
+ * <p>The index is checkpointed to {@link #INDEX_FILE}, 16 bytes per entry from least to
+ * most recently used, together with how far the newest segment was written. Loading
+ * reads the checkpoint and replays the records appended after it up to the first one
+ * whose checksum does not match, so an interrupted write is dropped instead of served.
+ * A crash loses the access order since the last checkpoint, never contents.
+ *
+ * <p>Evicted and replaced records stay behind as dead bytes. {@link #maintain()} moves
+ * the live records of a segment that is mostly dead to the newest segment, one record
+ * per lock hold, and deletes it.
+ */
+public class SegmentStore implements ImageStore {
+    static final String INDEX_FILE = "index";
+    static final String INDEX_FILE_TEMP = "index.tmp";
+    static final String SEGMENT_PREFIX = "segment_";
+    static final String SEGMENT_EXTENSION = ".pack";
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    static final int SEGMENT_HEADER = 8;
+    static final int SEGMENT_MAGIC = 0x454b5347;
+    static final int RECORD_HEADER = 20;
+    static final int RECORD_MAGIC = 0x454b5052;
+    static final int INDEX_MAGIC = 0x454b4958;
+    static final int INDEX_VERSION = 2;
+
+    private static final int REMOVED = -1;
+    private static final long NOT_FOUND = -1;
+    // Sealed segments with less than this share of live bytes are compacted.
+    private static final int MIN_LIVE_PERCENT = 50;
+    // Writes, removals and reads since the last checkpoint before maintenance takes one.
+    private static final int CHECKPOINT_OPS = 256;
+    private static final int INITIAL_RECORD_BUFFER = 32 * 1024;
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+        // Record bytes, headers included, that the index still points at.
+        long live;
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        int lengthAt(int offset) {
+            return buffer.getInt(offset + 12);
+        }
+    }
+
+    /** Hands its array to the append, so content is copied only into the mapping. */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(INITIAL_RECORD_BUFFER);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final File directory;
+    private final File indexFile;
+    private final File indexFileTmp;
+    private final long maxSize;
+    private final int codesChecksum;
+    // Key to the location of its record, see location().
+    private final LongLruIndex entries = new LongLruIndex();
+    private final SizeBuckets buckets = new SizeBuckets(entries);
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // Serializes checkpoints with each other and with clear(). Taken before this.
+    private final Object checkpointLock = new Object();
+    private Segment active;
+    private int activeEnd;
+    // Ids are never reused, so a stale checkpoint cannot claim a newer segment.
+    private int nextSegmentId;
+    private long size;
+    private int opsSinceCheckpoint;
+    private boolean loaded;
+
+    /** {@code codesChecksum} is the {@link EmojiCodes#checksum} of the codes keys refer to. */
+    public SegmentStore(File directory, long maxSize, int codesChecksum) {
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+        this.indexFileTmp = new File(directory, INDEX_FILE_TEMP);
+        this.maxSize = maxSize;
+        this.codesChecksum = codesChecksum;
+    }
+
+    static long location(int segment, int offset) {
+        return (long) segment << 32 | (offset & 0xffffffffL);
+    }
+
+    static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Maps the segments, reads the checkpoint and replays what was appended after it.
+     * Without a usable checkpoint every segment is replayed from the start.
+     */
+    @Override
+    public synchronized void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        mapSegments();
+        long mark = readIndex();
+        int markSegment = mark >= 0 ? segmentOf(mark) : Integer.MIN_VALUE;
+        for (Segment segment : segments.values()) {
+            if (segment.id < markSegment) {
+                continue;
+            }
+            int end = replay(segment, segment.id == markSegment ? offsetOf(mark) : SEGMENT_HEADER);
+            active = segment;
+            activeEnd = Math.min(end, segment.capacity());
+        }
+        if (!segments.isEmpty()) {
+            nextSegmentId = Math.max(nextSegmentId, segments.lastKey() + 1);
+        }
+        nextSegmentId = Math.max(nextSegmentId, markSegment + 1);
+
+        for (int entry = entries.eldest(); entry != LongLruIndex.NONE; entry = entries.newer(entry)) {
+            long location = entries.valueAt(entry);
+            Segment segment = segments.get(segmentOf(location));
+            int length = segment.lengthAt(offsetOf(location));
+            segment.live += RECORD_HEADER + length;
+            size += length;
+        }
+        buckets.rebuild();
+        // Segments without live records, left over from an interrupted compaction.
+        Segment[] all = segments.values().toArray(new Segment[0]);
+        for (Segment segment : all) {
+            if (segment.live == 0 && segment != active) {
+                segments.remove(segment.id);
+                segment.file.delete();
+            }
+        }
+        if (active != null) {
+            terminate();
+        }
+    }
+
+    /**
+     * Maps every segment. If one was written for other emoji codes, or before segments had
+     * headers, deletes the whole store instead, its keys cannot be trusted.
+     */
+    private void mapSegments() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        boolean stale = false;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_EXTENSION)) {
+                continue;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                file.delete();
+                continue;
+            }
+            long length = file.length();
+            if (id < 0 || length < SEGMENT_HEADER + RECORD_HEADER || length > Integer.MAX_VALUE) {
+                file.delete();
+                continue;
+            }
+            try {
+                Segment segment = new Segment(id, file, map(file, (int) length));
+                stale |= segment.buffer.getInt(0) != SEGMENT_MAGIC
+                        || segment.buffer.getInt(4) != codesChecksum;
+                segments.put(id, segment);
+            } catch (IOException e) {
+                e.printStackTrace();
+                file.delete();
+            }
+        }
+        if (stale) {
+            // Ids stay above the deleted ones, as after clear().
+            nextSegmentId = segments.lastKey() + 1;
+            segments.clear();
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < capacity) {
+                // Sparse on the file systems Android uses, pages are allocated on write.
+                raf.setLength(capacity);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    /**
+     * Loads the checkpointed entries whose records are still in place and returns the
+     * location the newest segment was written up to, or -1 without a usable checkpoint.
+     */
+    private long readIndex() {
+        if (!indexFile.exists()) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION
+                    || in.readInt() != codesChecksum) {
+                return -1;
+            }
+            int markSegment = in.readInt();
+            int markOffset = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                long location = in.readLong();
+                if (isRecordOf(key, location)) {
+                    entries.put(key, location, NOT_FOUND);
+                }
+            }
+            return location(markSegment, markOffset);
+        } catch (IOException e) {
+            entries.clear();
+            return -1;
+        }
+    }
+
+    private boolean isRecordOf(long key, long location) {
+        Segment segment = segments.get(segmentOf(location));
+        int offset = offsetOf(location);
+        if (segment == null || offset < SEGMENT_HEADER || offset > segment.capacity() - RECORD_HEADER) {
+            return false;
+        }
+        ByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(offset + 12);
+        return buffer.getInt(offset) == RECORD_MAGIC && buffer.getLong(offset + 4) == key
+                && length >= 0 && length <= segment.capacity() - offset - RECORD_HEADER;
+    }
+
+    /**
+     * Applies the records of {@code segment} from {@code offset} on and returns the end of
+     * the last intact one.
+     */
+    private int replay(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = segment.capacity();
+        CRC32 crc = new CRC32();
+        byte[] scratch = new byte[0];
+        while (offset >= 0 && offset <= capacity - RECORD_HEADER && buffer.getInt(offset) == RECORD_MAGIC) {
+            long key = buffer.getLong(offset + 4);
+            int length = buffer.getInt(offset + 12);
+            if (length == REMOVED) {
+                entries.remove(key, NOT_FOUND);
+                offset += RECORD_HEADER;
+                continue;
+            }
+            if (length < 0 || length > capacity - offset - RECORD_HEADER) {
+                break;
+            }
+            // CRC32.update(ByteBuffer) needs API 26.
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            view(buffer, offset + RECORD_HEADER, length).get(scratch, 0, length);
+            crc.reset();
+            crc.update(scratch, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 16)) {
+                break;
+            }
+            entries.put(key, location(segment.id, offset), NOT_FOUND);
+            offset += RECORD_HEADER + length;
+        }
+        return offset;
+    }
+
+    /** {@code length} bytes of {@code buffer} from {@code offset}, as a buffer of their own. */
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        // Through Buffer, ByteBuffer only overrides limit and position from Java 9 on.
+        ((Buffer) view).limit(offset + length);
+        ((Buffer) view).position(offset);
+        return view.slice();
+    }
+
+    private void ensureLoaded() {
+        try {
+            load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(long key) {
+        ensureLoaded();
+        return entries.contains(key);
+    }
+
+    @Override
+    public synchronized int ceilingSize(long combo, int size) {
+        ensureLoaded();
+        return buckets.ceiling(combo, size);
+    }
+
+    @Override
+    public synchronized int floorSize(long combo, int size) {
+        ensureLoaded();
+        return buckets.floor(combo, size);
+    }
+
+    /**
+     * Collects the content on the heap and checksums it before taking the lock, so the
+     * lock is only held for the copy into the mapping.
+     */
+    @Override
+    public long write(long key, Content content) throws IOException {
+        RecordBuffer record = new RecordBuffer();
+        content.writeTo(record);
+        int length = record.size();
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+        synchronized (this) {
+            ensureLoaded();
+            long location = append(key, record.array(), length, (int) crc.getValue());
+            long previous = entries.put(key, location, NOT_FOUND);
+            if (previous != NOT_FOUND) {
+                release(previous);
+            } else {
+                buckets.add(key);
+            }
+            active.live += RECORD_HEADER + length;
+            size += length;
+            opsSinceCheckpoint++;
+        }
+        return length;
+    }
+
+    /** Appends one record to the active segment and returns its location. */
+    private long append(long key, byte[] data, int length, int crc) throws IOException {
+        int recordLength = RECORD_HEADER + Math.max(length, 0);
+        ensureRoom(recordLength);
+        int offset = activeEnd;
+        ByteBuffer out = view(active.buffer, offset, recordLength);
+        out.putInt(RECORD_MAGIC);
+        out.putLong(key);
+        out.putInt(length);
+        out.putInt(crc);
+        if (length > 0) {
+            out.put(data, 0, length);
+        }
+        activeEnd += recordLength;
+        terminate();
+        return location(active.id, offset);
+    }
+
+    /**
+     * Zeroes the magic after the last record, so replay stops there even if older bytes
+     * follow, such as records after a torn one that were appended over.
+     */
+    private void terminate() {
+        if (activeEnd <= active.capacity() - 4) {
+            active.buffer.putInt(activeEnd, 0);
+        }
+    }
+
+    /** Starts a new segment unless the active one has {@code recordLength} bytes left. */
+    private void ensureRoom(int recordLength) throws IOException {
+        if (active != null && recordLength <= active.capacity() - activeEnd) {
+            return;
+        }
+        if (active != null) {
+            active.buffer.force();
+        }
+        int id = nextSegmentId++;
+        File file = new File(directory, SEGMENT_PREFIX + id + SEGMENT_EXTENSION);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        Segment segment = new Segment(id, file,
+                map(file, Math.max(SEGMENT_SIZE, SEGMENT_HEADER + recordLength)));
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, codesChecksum);
+        segments.put(id, segment);
+        active = segment;
+        activeEnd = SEGMENT_HEADER;
+    }
+
+    /** Drops the record at {@code location} from the accounting, its bytes become dead. */
+    private void release(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        int length = segment.lengthAt(offsetOf(location));
+        segment.live -= RECORD_HEADER + length;
+        size -= length;
+    }
+
+    @Override
+    public synchronized ByteBuffer read(long key) {
+        ensureLoaded();
+        long location = entries.get(key, NOT_FOUND);
+        if (location == NOT_FOUND) {
+            return null;
+        }
+        Segment segment = segments.get(segmentOf(location));
+        int offset = offsetOf(location);
+        return view(segment.buffer, offset + RECORD_HEADER, segment.lengthAt(offset)).asReadOnlyBuffer();
+    }
+
+    /** Entries share segment files, so there is never a file of their own. */
+    @Override
+    public File file(long key) {
+        return null;
+    }
+
+    @Override
+    public synchronized void touch(long key) {
+        ensureLoaded();
+        if (entries.touch(key)) {
+            opsSinceCheckpoint++;
+        }
+    }
+
+    @Override
+    public synchronized void remove(long key) {
+        ensureLoaded();
+        removeEntry(key);
+    }
+
+    private void removeEntry(long key) {
+        long location = entries.remove(key, NOT_FOUND);
+        if (location == NOT_FOUND) {
+            return;
+        }
+        release(location);
+        buckets.remove(key);
+        opsSinceCheckpoint++;
+        try {
+            // Without it, replay would bring the entry back from its record.
+            append(key, null, REMOVED, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Deletes the segment files, however many entries they hold. */
+    @Override
+    public void clear() {
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                loaded = true;
+                for (Segment segment : segments.values()) {
+                    segment.file.delete();
+                }
+                segments.clear();
+                active = null;
+                activeEnd = 0;
+                entries.clear();
+                buckets.clear();
+                size = 0;
+                opsSinceCheckpoint = 0;
+                indexFile.delete();
+                indexFileTmp.delete();
+            }
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        ensureLoaded();
+        return size;
+    }
+
+    @Override
+    public synchronized int entryCount() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    @Override
+    public synchronized boolean needsMaintenance() {
+        return size > maxSize || opsSinceCheckpoint >= CHECKPOINT_OPS || compactionVictim() != null;
+    }
+
+    /** Trims, compacts at most one segment and checkpoints if anything changed. */
+    @Override
+    public void maintain() {
+        boolean changed;
+        synchronized (this) {
+            ensureLoaded();
+            while (size > maxSize && !entries.isEmpty()) {
+                removeEntry(entries.keyAt(entries.eldest()));
+            }
+            changed = opsSinceCheckpoint > 0;
+        }
+        if (compact() || changed) {
+            checkpoint();
+        }
+    }
+
+    /** The sealed segment with the fewest live bytes, if it is mostly dead. */
+    private Segment compactionVictim() {
+        Segment victim = null;
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.live * 100 < (long) segment.capacity() * MIN_LIVE_PERCENT
+                    && (victim == null || segment.live < victim.live)) {
+                victim = segment;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Copies the live records of the compaction victim to the active segment and deletes
+     * it. Returns false if no segment needed compacting.
+     */
+    private boolean compact() {
+        Segment victim;
+        long[] keys = new long[16];
+        long[] locations = new long[16];
+        int count = 0;
+        synchronized (this) {
+            victim = compactionVictim();
+            if (victim == null) {
+                return false;
+            }
+            for (int entry = entries.eldest(); entry != LongLruIndex.NONE; entry = entries.newer(entry)) {
+                long location = entries.valueAt(entry);
+                if (segmentOf(location) != victim.id) {
+                    continue;
+                }
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    locations = Arrays.copyOf(locations, count * 2);
+                }
+                keys[count] = entries.keyAt(entry);
+                locations[count++] = location;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            synchronized (this) {
+                // Skip records replaced or removed since the snapshot.
+                if (entries.get(keys[i], NOT_FOUND) != locations[i] || !segments.containsKey(victim.id)) {
+                    continue;
+                }
+                try {
+                    move(victim, keys[i], offsetOf(locations[i]));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return true;
+                }
+            }
+        }
+        synchronized (this) {
+            if (segments.get(victim.id) != victim || victim.live > 0) {
+                return true;
+            }
+            // The copies must be on disk before the only other copy goes away.
+            if (active != null) {
+                active.buffer.force();
+            }
+            segments.remove(victim.id);
+            victim.file.delete();
+        }
+        return true;
+    }
+
+    /** Appends a copy of a record, header and checksum included, keeping its LRU position. */
+    private void move(Segment from, long key, int offset) throws IOException {
+        int recordLength = RECORD_HEADER + from.lengthAt(offset);
+        ensureRoom(recordLength);
+        int target = activeEnd;
+        view(active.buffer, target, recordLength).put(view(from.buffer, offset, recordLength));
+        activeEnd += recordLength;
+        terminate();
+        entries.replace(key, location(active.id, target));
+        from.live -= recordLength;
+        active.live += recordLength;
+        opsSinceCheckpoint++;
+    }
+
+    /**
+     * Writes the index from a snapshot taken under the lock. The active segment is
+     * flushed first, so every record the checkpoint points at is on disk.
+     */
+    private void checkpoint() {
+        synchronized (checkpointLock) {
+            long[] keys;
+            long[] locations;
+            int markSegment;
+            int markOffset;
+            MappedByteBuffer flush;
+            synchronized (this) {
+                int count = entries.size();
+                keys = new long[count];
+                locations = new long[count];
+                int i = 0;
+                for (int entry = entries.eldest(); entry != LongLruIndex.NONE; entry = entries.newer(entry)) {
+                    keys[i] = entries.keyAt(entry);
+                    locations[i++] = entries.valueAt(entry);
+                }
+                // Without an active segment the next one starts a fresh replay.
+                markSegment = active != null ? active.id : nextSegmentId - 1;
+                markOffset = active != null ? activeEnd : Integer.MAX_VALUE;
+                flush = active != null ? active.buffer : null;
+                opsSinceCheckpoint = 0;
+            }
+            if (flush != null) {
+                flush.force();
+            }
+            try {
+                try (FileOutputStream file = new FileOutputStream(indexFileTmp)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                    out.writeInt(INDEX_MAGIC);
+                    out.writeInt(INDEX_VERSION);
+                    out.writeInt(codesChecksum);
+                    out.writeInt(markSegment);
+                    out.writeInt(markOffset);
+                    out.writeInt(keys.length);
+                    for (int i = 0; i < keys.length; i++) {
+                        out.writeLong(keys[i]);
+                        out.writeLong(locations[i]);
+                    }
+                    out.flush();
+                    file.getFD().sync();
+                }
+                if (!indexFileTmp.renameTo(indexFile)) {
+                    throw new IOException("cannot rename " + indexFileTmp + " to " + indexFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.je.emojikitchen.core;
+
+/**
+ * Answers {@link CacheIndex#ceilingSize} and {@link CacheIndex#floorSize} over the keys of
+ * a {@link LongLruIndex} without probing every size. Each combination keeps a 64 bit mask
+ * with one bit per range of {@link #SIZES_PER_BUCKET} sizes that has at least one stored
+ * variant, and only ranges with their bit set are scanned.
+ *
+ * <p>Not thread-safe, the owner of the entries guards both.
+ */
+final class SizeBuckets {
+    static final int SIZES_PER_BUCKET = (ImageSizes.MAX_SIZE + 63) / 64;
+
+    private final LongLruIndex entries;
+    // Combination key to the buckets of sizes it has variants in.
+    private final LongLruIndex masks = new LongLruIndex();
+
+    SizeBuckets(LongLruIndex entries) {
+        this.entries = entries;
+    }
+
+    int ceiling(long combo, int size) {
+        if (size < 1 || size > ImageSizes.MAX_SIZE) {
+            return -1;
+        }
+        int first = bucketOf(size);
+        long mask = masks.get(combo, 0) & (-1L << first);
+        while (mask != 0) {
+            int bucket = Long.numberOfTrailingZeros(mask);
+            int end = Math.min(ImageSizes.MAX_SIZE, (bucket + 1) * SIZES_PER_BUCKET);
+            for (int s = Math.max(size, bucket * SIZES_PER_BUCKET + 1); s <= end; s++) {
+                if (entries.contains(PackedKeys.withSize(combo, s))) {
+                    return s;
+                }
+            }
+            mask &= mask - 1;
+        }
+        return -1;
+    }
+
+    int floor(long combo, int size) {
+        if (size < 1) {
+            return -1;
+        }
+        size = Math.min(size, ImageSizes.MAX_SIZE);
+        int last = bucketOf(size);
+        long mask = masks.get(combo, 0) & (last == 63 ? -1L : ~(-1L << (last + 1)));
+        while (mask != 0) {
+            int bucket = 63 - Long.numberOfLeadingZeros(mask);
+            int start = bucket * SIZES_PER_BUCKET + 1;
+            for (int s = Math.min(size, (bucket + 1) * SIZES_PER_BUCKET); s >= start; s--) {
+                if (entries.contains(PackedKeys.withSize(combo, s))) {
+                    return s;
+                }
+            }
+            mask &= ~(1L << bucket);
+        }
+        return -1;
+    }
+
+    private static int bucketOf(int size) {
+        return (size - 1) / SIZES_PER_BUCKET;
+    }
+
+    /** Records that {@code key} was added to the entries. */
+    void add(long key) {
+        long combo = PackedKeys.combo(key);
+        long mask = masks.get(combo, 0) | (1L << bucketOf(PackedKeys.size(key)));
+        masks.put(combo, mask, 0);
+    }
+
+    /**
+     * Records that {@code key} was removed from the entries, clearing its bit unless
+     * another size in the bucket remains.
+     */
+    void remove(long key) {
+        long combo = PackedKeys.combo(key);
+        int bucket = bucketOf(PackedKeys.size(key));
+        int end = Math.min(ImageSizes.MAX_SIZE, (bucket + 1) * SIZES_PER_BUCKET);
+        for (int s = bucket * SIZES_PER_BUCKET + 1; s <= end; s++) {
+            if (entries.contains(PackedKeys.withSize(combo, s))) {
+                return;
+            }
+        }
+        long mask = masks.get(combo, 0) & ~(1L << bucket);
+        if (mask == 0) {
+            masks.remove(combo, 0);
+        } else {
+            masks.put(combo, mask, 0);
+        }
+    }
+
+    /** Rebuilds every mask from the current entries. */
+    void rebuild() {
+        masks.clear();
+        for (int entry = entries.eldest(); entry != LongLruIndex.NONE; entry = entries.newer(entry)) {
+            add(entries.keyAt(entry));
+        }
+    }
+
+    void clear() {
+        masks.clear();
+    }
+}
@@ -0,0 +1,188 @@
+package com.je.emojikitchen.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiskIndexTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final KeyCodec CODEC = new KeyCodec(new String[]{"1f600", "1f603", "2764-fe0f"});
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("disk-index").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static long key(int first, int second, int size) {
+        return PackedKeys.pack(first, second, size);
+    }
+
+    private DiskIndex open(long maxSize) throws IOException {
+        DiskIndex index = new DiskIndex(directory, maxSize, CODEC);
+        index.load();
+        return index;
+    }
+
+    private List<String> journal() throws IOException {
+        return Files.readAllLines(new File(directory, DiskIndex.JOURNAL_FILE).toPath(), UTF_8);
+    }
+
+    private void createFile(long key, int length) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(directory, CODEC.name(key) + DiskIndex.FILE_EXTENSION))) {
+            out.write(new byte[length]);
+        }
+    }
+
+    @Test
+    public void replaysTheJournalAfterReopening() throws IOException {
+        DiskIndex index = open(1000);
+        index.put(key(0, 1, 128), 100);
+        index.put(key(1, 2, 128), 200);
+        index.put(key(2, 0, 64), 300);
+        index.put(key(1, 2, 128), 250);
+        index.remove(key(2, 0, 64));
+        index.put(key(2, 2, 32), 10);
+        index.touch(key(0, 1, 128));
+        index.compactIfNeeded();
+        // touch() does not flush, trimToSize() flushes whatever is pending.
+        index.trimToSize();
+
+        DiskIndex reopened = open(1000);
+        assertEquals(3, reopened.entryCount());
+        assertEquals(100 + 250 + 10, reopened.size());
+        assertFalse(reopened.contains(key(2, 0, 64)));
+        assertEquals(128, reopened.ceilingSize(PackedKeys.combo(key(1, 2, 128)), 65));
+        assertEquals(-1, reopened.floorSize(PackedKeys.combo(key(1, 2, 128)), 127));
+    }
+
+    @Test
+    public void replayRestoresAccessOrder() throws IOException {
+        DiskIndex index = open(1000);
+        index.put(key(0, 1, 128), 100);
+        index.put(key(1, 2, 128), 100);
+        index.put(key(2, 0, 128), 100);
+        index.touch(key(0, 1, 128));
+        index.trimToSize();
+
+        DiskIndex reopened = open(150);
+        assertEquals(1, reopened.entryCount());
+        assertTrue(reopened.contains(key(0, 1, 128)));
+    }
+
+    @Test
+    public void trimToSizeEvictsLeastRecentlyUsed() throws IOException {
+        DiskIndex index = open(250);
+        index.put(key(0, 1, 128), 100);
+        index.put(key(1, 2, 128), 100);
+        index.put(key(2, 0, 128), 100);
+        assertTrue(index.needsMaintenance());
+
+        assertArrayEquals(new long[]{key(0, 1, 128)}, index.trimToSize());
+        assertEquals(200, index.size());
+        assertFalse(index.needsMaintenance());
+        assertTrue(journal().contains("REMOVE " + CODEC.name(key(0, 1, 128))));
+    }
+
+    @Test
+    public void compactionRewritesOneCleanLinePerEntry() throws IOException {
+        DiskIndex index = open(Long.MAX_VALUE);
+        long first = key(0, 1, 128);
+        long second = key(1, 2, 64);
+        index.put(first, 100);
+        index.put(second, 200);
+        for (int i = 0; i < 3000; i++) {
+            index.touch(i % 2 == 0 ? first : second);
+        }
+        index.touch(first);
+        assertTrue(index.needsMaintenance());
+
+        index.compactIfNeeded();
+        assertFalse(index.needsMaintenance());
+        List<String> lines = journal();
+        assertEquals(5, lines.size());
+        assertEquals(DiskIndex.MAGIC, lines.get(0));
+        assertEquals(DiskIndex.VERSION, lines.get(1));
+        assertEquals("", lines.get(2));
+        assertEquals("CLEAN " + CODEC.name(second) + " 200", lines.get(3));
+        assertEquals("CLEAN " + CODEC.name(first) + " 100", lines.get(4));
+
+        DiskIndex reopened = open(Long.MAX_VALUE);
+        assertEquals(2, reopened.entryCount());
+        assertEquals(300, reopened.size());
+    }
+
+    @Test
+    public void rebuildsFromFilesWithoutAJournal() throws IOException {
+        createFile(key(0, 1, 128), 40);
+        createFile(key(2, 1, 256), 60);
+        File legacy = new File(directory, "emoji_1f600_1f603.png");
+        File unknown = new File(directory, "emoji_1f600_1f4a9_128px.png");
+        assertTrue(legacy.createNewFile());
+        assertTrue(unknown.createNewFile());
+
+        DiskIndex index = open(1000);
+        assertEquals(2, index.entryCount());
+        assertEquals(100, index.size());
+        assertFalse(legacy.exists());
+        assertFalse(unknown.exists());
+        assertEquals(5, journal().size());
+    }
+
+    @Test
+    public void rebuildsFromFilesWhenTheJournalIsCorrupt() throws IOException {
+        createFile(key(0, 1, 128), 40);
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, DiskIndex.JOURNAL_FILE)), UTF_8)) {
+            out.write(DiskIndex.MAGIC + "\n" + DiskIndex.VERSION + "\n\nDIRTY whatever\n");
+        }
+
+        DiskIndex index = open(1000);
+        assertEquals(1, index.entryCount());
+        assertEquals(40, index.size());
+        assertEquals("CLEAN " + CODEC.name(key(0, 1, 128)) + " 40", journal().get(3));
+    }
+
+    @Test
+    public void deletesOrphanedEntriesOnReplay() throws IOException {
+        File orphan = new File(directory, "emoji_1f600_1f4a9_128px.png");
+        assertTrue(orphan.createNewFile());
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, DiskIndex.JOURNAL_FILE)), UTF_8)) {
+            out.write(DiskIndex.MAGIC + "\n" + DiskIndex.VERSION + "\n\n"
+                    + "CLEAN emoji_1f600_1f4a9_128px 10\n"
+                    + "CLEAN " + CODEC.name(key(0, 1, 128)) + " 20\n");
+        }
+
+        DiskIndex index = open(1000);
+        assertEquals(1, index.entryCount());
+        assertEquals(20, index.size());
+        assertFalse(orphan.exists());
+    }
+}
@@ -0,0 +1,67 @@
+package com.je.emojikitchen.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyCodecTest {
+    private static final String[] CODES = {"1f600", "1f603", "2764-fe0f", "1f469-200d-1f52c"};
+
+    private final KeyCodec codec = new KeyCodec(CODES);
+
+    @Test
+    public void encodeUsesListPositions() {
+        long key = codec.encode("2764-fe0f", "1f600", 128);
+        assertEquals(2, PackedKeys.first(key));
+        assertEquals(0, PackedKeys.second(key));
+        assertEquals(128, PackedKeys.size(key));
+        assertEquals(-1, codec.positionOf("1f4a9"));
+    }
+
+    @Test
+    public void encodeRejectsUnknownCodesAndSizes() {
+        assertEquals(PackedKeys.NO_KEY, codec.encode("1f4a9", "1f600", 128));
+        assertEquals(PackedKeys.NO_KEY, codec.encode("1f600", "1f4a9", 128));
+        assertEquals(PackedKeys.NO_KEY, codec.encode("1f600", "1f603", 0));
+        assertEquals(PackedKeys.NO_KEY, codec.encode("1f600", "1f603", ImageSizes.MAX_SIZE + 1));
+    }
+
+    @Test
+    public void nameMatchesVariantKey() throws IOException {
+        int[] sizes = {1, 9, 10, 64, 99, 100, 128, ImageSizes.MAX_SIZE};
+        for (String first : CODES) {
+            for (String second : CODES) {
+                for (int size : sizes) {
+                    long key = codec.encode(first, second, size);
+                    String expected = CacheKeys.variantKey(first, second, size);
+                    assertEquals(expected, codec.name(key));
+
+                    StringWriter out = new StringWriter();
+                    codec.writeName(key, out);
+                    assertEquals(expected, out.toString());
+
+                    assertEquals(key, codec.decode(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decodeRejectsNamesWithoutKeys() {
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_1f603"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_1f4a9_128px"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_1f603_0px"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_1f603_1024px"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_1f603_1f600_128px"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("emoji_1f600_128px"));
+        assertEquals(PackedKeys.NO_KEY, codec.decode("other_1f600_1f603_128px"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreCodesThanKeysCanAddress() {
+        new KeyCodec(new String[PackedKeys.MAX_POSITION + 2]);
+    }
+}
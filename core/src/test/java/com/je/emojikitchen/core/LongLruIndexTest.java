@@ -0,0 +1,115 @@
+package com.je.emojikitchen.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongLruIndexTest {
+    private static long[] keysInOrder(LongLruIndex index) {
+        long[] keys = new long[index.size()];
+        int i = 0;
+        for (int entry = index.eldest(); entry != LongLruIndex.NONE; entry = index.newer(entry)) {
+            keys[i++] = index.keyAt(entry);
+        }
+        assertEquals(index.size(), i);
+        return keys;
+    }
+
+    @Test
+    public void putReturnsPreviousValueAndMovesToNewest() {
+        LongLruIndex index = new LongLruIndex();
+        assertEquals(-1, index.put(1, 10, -1));
+        assertEquals(-1, index.put(2, 20, -1));
+        assertEquals(-1, index.put(3, 30, -1));
+        assertEquals(10, index.put(1, 11, -1));
+
+        assertEquals(3, index.size());
+        assertEquals(11, index.get(1, -1));
+        assertArrayEquals(new long[]{2, 3, 1}, keysInOrder(index));
+    }
+
+    @Test
+    public void getAndReplaceKeepTheOrder() {
+        LongLruIndex index = new LongLruIndex();
+        index.put(1, 10, -1);
+        index.put(2, 20, -1);
+
+        assertEquals(10, index.get(1, -1));
+        assertTrue(index.replace(1, 12));
+        assertFalse(index.replace(3, 30));
+
+        assertEquals(12, index.get(1, -1));
+        assertEquals(-1, index.get(3, -1));
+        assertArrayEquals(new long[]{1, 2}, keysInOrder(index));
+    }
+
+    @Test
+    public void touchMovesToNewest() {
+        LongLruIndex index = new LongLruIndex();
+        index.put(1, 10, -1);
+        index.put(2, 20, -1);
+        index.put(3, 30, -1);
+
+        assertTrue(index.touch(1));
+        assertFalse(index.touch(4));
+        assertArrayEquals(new long[]{2, 3, 1}, keysInOrder(index));
+    }
+
+    @Test
+    public void removeUnlinksTheEntry() {
+        LongLruIndex index = new LongLruIndex();
+        index.put(1, 10, -1);
+        index.put(2, 20, -1);
+        index.put(3, 30, -1);
+
+        assertEquals(20, index.remove(2, -1));
+        assertEquals(-1, index.remove(2, -1));
+        assertFalse(index.contains(2));
+        assertArrayEquals(new long[]{1, 3}, keysInOrder(index));
+
+        index.put(4, 40, -1);
+        assertArrayEquals(new long[]{1, 3, 4}, keysInOrder(index));
+        assertEquals(40, index.get(4, -1));
+    }
+
+    @Test
+    public void growsAndKeepsEveryEntry() {
+        LongLruIndex index = new LongLruIndex();
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            index.put(PackedKeys.pack(i % 100, i / 100, 128), i, -1);
+        }
+        // Remove every other entry, so lookups have to probe past deleted slots.
+        for (int i = 0; i < count; i += 2) {
+            assertEquals(i, index.remove(PackedKeys.pack(i % 100, i / 100, 128), -1));
+        }
+        assertEquals(count / 2, index.size());
+        for (int i = 0; i < count; i++) {
+            long expected = i % 2 == 0 ? -1 : i;
+            assertEquals(expected, index.get(PackedKeys.pack(i % 100, i / 100, 128), -1));
+        }
+        int previous = -1;
+        for (int entry = index.eldest(); entry != LongLruIndex.NONE; entry = index.newer(entry)) {
+            assertTrue(index.valueAt(entry) > previous);
+            previous = (int) index.valueAt(entry);
+        }
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        LongLruIndex index = new LongLruIndex();
+        index.put(1, 10, -1);
+        index.put(2, 20, -1);
+        index.clear();
+
+        assertTrue(index.isEmpty());
+        assertEquals(LongLruIndex.NONE, index.eldest());
+        assertFalse(index.contains(1));
+
+        index.put(3, 30, -1);
+        assertArrayEquals(new long[]{3}, keysInOrder(index));
+    }
+}
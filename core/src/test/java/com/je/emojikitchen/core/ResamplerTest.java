@@ -0,0 +1,84 @@
+package com.je.emojikitchen.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResamplerTest {
+    private static int[] solid(int color, int width, int height) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+
+    @Test
+    public void sameSizeCopies() {
+        int[] src = {0xff102030, 0x80ffffff, 0x00000000, 0xff000000};
+        int[] dst = Resampler.resize(src, 2, 2, 2, 2);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void solidColorStaysSolid() {
+        int color = 0xff3c8ad2;
+        int[] src = solid(color, 512, 512);
+        assertArrayEquals(solid(color, 128, 128), Resampler.resize(src, 512, 512, 128, 128));
+        assertArrayEquals(solid(color, 96, 96), Resampler.resize(src, 512, 512, 96, 96));
+        assertArrayEquals(solid(color, 40, 40), Resampler.resize(solid(color, 20, 20), 20, 20, 40, 40));
+    }
+
+    @Test
+    public void transparentStaysTransparent() {
+        int[] dst = Resampler.resize(solid(0x00ff0000, 64, 64), 64, 64, 16, 16);
+        assertArrayEquals(new int[16 * 16], dst);
+    }
+
+    @Test
+    public void transparentNeighboursDoNotDarkenEdges() {
+        // Left half opaque white, right half transparent black.
+        int width = 64;
+        int[] src = new int[width * width];
+        for (int y = 0; y < width; y++) {
+            Arrays.fill(src, y * width, y * width + width / 2, 0xffffffff);
+        }
+        int[] dst = Resampler.resize(src, width, width, 24, 24);
+        for (int pixel : dst) {
+            if (pixel >>> 24 != 0) {
+                assertEquals(0xffffff, pixel & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void reusedBuffersGiveTheSameResult() {
+        int[] large = new int[128 * 128];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (i * 0x9e3779b9) | 0xff000000;
+        }
+        // Opaque rows first, then a mostly transparent image, so stale work data would show.
+        int[] sparse = new int[96 * 96];
+        Arrays.fill(sparse, 40 * 96, 41 * 96, 0xff204080);
+        Resampler.Buffers buffers = new Resampler.Buffers();
+        int[] dst = new int[64 * 64];
+
+        Resampler.resize(large, 128, 128, dst, 64, 64, buffers);
+        assertArrayEquals(Resampler.resize(large, 128, 128, 64, 64), Arrays.copyOf(dst, 64 * 64));
+        Resampler.resize(sparse, 96, 96, dst, 24, 24, buffers);
+        assertArrayEquals(Resampler.resize(sparse, 96, 96, 24, 24), Arrays.copyOf(dst, 24 * 24));
+        Resampler.resize(large, 128, 128, dst, 40, 40, buffers);
+        assertArrayEquals(Resampler.resize(large, 128, 128, 40, 40), Arrays.copyOf(dst, 40 * 40));
+    }
+
+    @Test
+    public void lanczosIsOneAtZeroAndZeroAtOtherIntegers() {
+        assertEquals(1, Resampler.lanczos(0), 0);
+        for (int x = 1; x <= Resampler.LOBES; x++) {
+            assertEquals(0, Resampler.lanczos(x), 1e-12);
+            assertEquals(0, Resampler.lanczos(-x), 1e-12);
+        }
+        assertEquals(0, Resampler.lanczos(Resampler.LOBES + 0.5), 0);
+    }
+}
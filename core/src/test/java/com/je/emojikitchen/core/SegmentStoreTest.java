@@ -0,0 +1,211 @@
+package com.je.emojikitchen.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentStoreTest {
+    private static final int CHECKSUM = EmojiCodes.checksum(new String[]{"1f600", "1f603"});
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segment-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static long key(int size) {
+        return PackedKeys.pack(0, 1, size);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+
+    private static ImageStore.Content content(final byte[] bytes) {
+        return out -> out.write(bytes);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private SegmentStore open(long maxSize, int checksum) throws IOException {
+        SegmentStore store = new SegmentStore(directory, maxSize, checksum);
+        store.load();
+        return store;
+    }
+
+    private SegmentStore open() throws IOException {
+        return open(Long.MAX_VALUE, CHECKSUM);
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, SegmentStore.SEGMENT_PREFIX + id + SegmentStore.SEGMENT_EXTENSION);
+    }
+
+    @Test
+    public void readsBackWrittenBytes() throws IOException {
+        SegmentStore store = open();
+        assertEquals(100, store.write(key(64), content(bytes(100, 1))));
+        assertEquals(200, store.write(key(128), content(bytes(200, 2))));
+        assertEquals(50, store.write(key(64), content(bytes(50, 3))));
+
+        assertEquals(2, store.entryCount());
+        assertEquals(250, store.size());
+        assertArrayEquals(bytes(50, 3), toArray(store.read(key(64))));
+        assertArrayEquals(bytes(200, 2), toArray(store.read(key(128))));
+        assertNull(store.read(key(256)));
+        assertEquals(128, store.ceilingSize(PackedKeys.combo(key(1)), 65));
+    }
+
+    @Test
+    public void replaysRecordsAfterTheCheckpoint() throws IOException {
+        SegmentStore store = open();
+        store.write(key(64), content(bytes(100, 1)));
+        store.write(key(128), content(bytes(100, 2)));
+        store.maintain();
+        assertTrue(new File(directory, SegmentStore.INDEX_FILE).exists());
+        store.write(key(256), content(bytes(100, 3)));
+        store.remove(key(64));
+
+        SegmentStore reopened = open();
+        assertEquals(2, reopened.entryCount());
+        assertEquals(200, reopened.size());
+        assertFalse(reopened.contains(key(64)));
+        assertArrayEquals(bytes(100, 2), toArray(reopened.read(key(128))));
+        assertArrayEquals(bytes(100, 3), toArray(reopened.read(key(256))));
+    }
+
+    @Test
+    public void replaysEverySegmentWithoutACheckpoint() throws IOException {
+        SegmentStore store = open();
+        store.write(key(64), content(bytes(100, 1)));
+        store.write(key(128), content(bytes(100, 2)));
+        store.remove(key(64));
+        assertFalse(new File(directory, SegmentStore.INDEX_FILE).exists());
+
+        SegmentStore reopened = open();
+        assertEquals(1, reopened.entryCount());
+        assertArrayEquals(bytes(100, 2), toArray(reopened.read(key(128))));
+    }
+
+    @Test
+    public void dropsARecordWhoseChecksumDoesNotMatch() throws IOException {
+        SegmentStore store = open();
+        store.write(key(64), content(bytes(100, 1)));
+        store.maintain();
+        store.write(key(128), content(bytes(100, 2)));
+
+        // The second record starts right after the first, corrupt its first payload byte.
+        int offset = SegmentStore.SEGMENT_HEADER + SegmentStore.RECORD_HEADER + 100
+                + SegmentStore.RECORD_HEADER;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(0), "rw")) {
+            file.seek(offset);
+            file.write(~bytes(100, 2)[0]);
+        }
+
+        SegmentStore reopened = open();
+        assertEquals(1, reopened.entryCount());
+        assertTrue(reopened.contains(key(64)));
+        assertFalse(reopened.contains(key(128)));
+    }
+
+    @Test
+    public void maintainEvictsLeastRecentlyUsed() throws IOException {
+        SegmentStore store = open(250, CHECKSUM);
+        store.write(key(64), content(bytes(100, 1)));
+        store.write(key(128), content(bytes(100, 2)));
+        store.write(key(256), content(bytes(100, 3)));
+        store.touch(key(64));
+        assertTrue(store.needsMaintenance());
+
+        store.maintain();
+        assertEquals(200, store.size());
+        assertFalse(store.contains(key(128)));
+
+        SegmentStore reopened = open(250, CHECKSUM);
+        assertEquals(2, reopened.entryCount());
+        assertTrue(reopened.contains(key(64)));
+    }
+
+    @Test
+    public void compactionMovesLiveRecordsAndDeletesTheSegment() throws IOException {
+        SegmentStore store = open();
+        int length = 512 * 1024;
+        // Seven records fill the first segment, the eighth starts the second.
+        for (int size = 1; size <= 8; size++) {
+            store.write(key(size), content(bytes(length, size)));
+        }
+        assertTrue(segmentFile(1).exists());
+        for (int size = 1; size <= 6; size++) {
+            store.remove(key(size));
+        }
+
+        store.maintain();
+        assertFalse(segmentFile(0).exists());
+        assertArrayEquals(bytes(length, 7), toArray(store.read(key(7))));
+
+        SegmentStore reopened = open();
+        assertEquals(2, reopened.entryCount());
+        assertArrayEquals(bytes(length, 7), toArray(reopened.read(key(7))));
+        assertArrayEquals(bytes(length, 8), toArray(reopened.read(key(8))));
+    }
+
+    @Test
+    public void deletesAStoreWrittenForOtherCodes() throws IOException {
+        SegmentStore store = open();
+        store.write(key(64), content(bytes(100, 1)));
+        store.maintain();
+
+        SegmentStore reopened = open(Long.MAX_VALUE, CHECKSUM + 1);
+        assertEquals(0, reopened.entryCount());
+        assertFalse(segmentFile(0).exists());
+
+        reopened.write(key(64), content(bytes(100, 2)));
+        assertFalse(segmentFile(0).exists());
+        assertArrayEquals(bytes(100, 2), toArray(reopened.read(key(64))));
+    }
+
+    @Test
+    public void clearDeletesEverything() throws IOException {
+        SegmentStore store = open();
+        store.write(key(64), content(bytes(100, 1)));
+        store.maintain();
+        store.clear();
+
+        assertEquals(0, store.entryCount());
+        assertEquals(0, store.size());
+        assertNull(store.read(key(64)));
+        assertEquals(0, open().entryCount());
+    }
+}
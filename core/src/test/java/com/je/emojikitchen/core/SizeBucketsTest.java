@@ -0,0 +1,84 @@
+package com.je.emojikitchen.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeBucketsTest {
+    private static final long COMBO = PackedKeys.combo(PackedKeys.pack(3, 7, 1));
+    private static final long OTHER = PackedKeys.combo(PackedKeys.pack(7, 3, 1));
+
+    private final LongLruIndex entries = new LongLruIndex();
+    private final SizeBuckets buckets = new SizeBuckets(entries);
+
+    private void add(long combo, int size) {
+        long key = PackedKeys.withSize(combo, size);
+        entries.put(key, 0, -1);
+        buckets.add(key);
+    }
+
+    private void remove(long combo, int size) {
+        long key = PackedKeys.withSize(combo, size);
+        entries.remove(key, -1);
+        buckets.remove(key);
+    }
+
+    @Test
+    public void emptyCombinationHasNoSizes() {
+        assertEquals(-1, buckets.ceiling(COMBO, 1));
+        assertEquals(-1, buckets.floor(COMBO, ImageSizes.MAX_SIZE));
+    }
+
+    @Test
+    public void findsNearestSizesAcrossBuckets() {
+        add(COMBO, 1);
+        add(COMBO, 64);
+        add(COMBO, 300);
+        add(COMBO, ImageSizes.MAX_SIZE);
+        add(OTHER, 128);
+
+        assertEquals(1, buckets.ceiling(COMBO, 1));
+        assertEquals(64, buckets.ceiling(COMBO, 2));
+        assertEquals(64, buckets.ceiling(COMBO, 64));
+        assertEquals(300, buckets.ceiling(COMBO, 65));
+        assertEquals(ImageSizes.MAX_SIZE, buckets.ceiling(COMBO, 301));
+        assertEquals(-1, buckets.ceiling(COMBO, ImageSizes.MAX_SIZE + 1));
+
+        assertEquals(ImageSizes.MAX_SIZE, buckets.floor(COMBO, ImageSizes.MAX_SIZE * 2));
+        assertEquals(300, buckets.floor(COMBO, ImageSizes.MAX_SIZE - 1));
+        assertEquals(64, buckets.floor(COMBO, 299));
+        assertEquals(1, buckets.floor(COMBO, 63));
+        assertEquals(-1, buckets.floor(COMBO, 0));
+
+        assertEquals(128, buckets.ceiling(OTHER, 1));
+        assertEquals(-1, buckets.floor(OTHER, 127));
+    }
+
+    @Test
+    public void removeKeepsBucketWhileAnotherSizeRemains() {
+        int size = SizeBuckets.SIZES_PER_BUCKET * 3 + 1;
+        add(COMBO, size);
+        add(COMBO, size + 1);
+
+        remove(COMBO, size);
+        assertEquals(size + 1, buckets.ceiling(COMBO, 1));
+
+        remove(COMBO, size + 1);
+        assertEquals(-1, buckets.ceiling(COMBO, 1));
+        assertEquals(-1, buckets.floor(COMBO, ImageSizes.MAX_SIZE));
+    }
+
+    @Test
+    public void rebuildMatchesEntries() {
+        entries.put(PackedKeys.withSize(COMBO, 96), 0, -1);
+        entries.put(PackedKeys.withSize(COMBO, 256), 0, -1);
+        buckets.rebuild();
+
+        assertEquals(96, buckets.ceiling(COMBO, 1));
+        assertEquals(256, buckets.ceiling(COMBO, 97));
+        assertEquals(96, buckets.floor(COMBO, 255));
+
+        buckets.clear();
+        assertEquals(-1, buckets.ceiling(COMBO, 1));
+    }
+}
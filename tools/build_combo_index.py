@@ -0,0 +1,112 @@
+#!/usr/bin/env python3
+"""Builds combos.bin, the tables of emoji pairs that exist upstream and of pairs whose
+two orders are drawn differently.
+
+usage: build_combo_index.py [--output combos.bin] [metadata.json]
+
+metadata.json is the combination list published by the emoji kitchen backend
+(https://github.com/xsalazar/emoji-kitchen-backend), downloaded from there when no
+file is given. The output is checked in as app/src/main/assets/combos.bin, so builds
+neither need Python nor the network and always ship the same table. Run this by hand
+after changing emoji_codes or to pick up new combinations, and commit the result.
+The layout of the output is documented in ComboIndex.java.
+"""
+import argparse
+import json
+import os
+import struct
+import urllib.request
+import xml.etree.ElementTree as ET
+import zlib
+
+ROOT = os.path.join(os.path.dirname(os.path.abspath(__file__)), os.pardir)
+ARRAYS = os.path.join(ROOT, "app", "src", "main", "res", "values", "arrays.xml")
+OUTPUT = os.path.join(ROOT, "app", "src", "main", "assets", "combos.bin")
+METADATA_URL = "https://raw.githubusercontent.com/xsalazar/emoji-kitchen-backend/main/app/metadata.json"
+MAGIC = 0x454B4349
+VERSION = 2
+
+
+def load_codes():
+    root = ET.parse(ARRAYS).getroot()
+    for array in root.iter("string-array"):
+        if array.get("name") == "emoji_codes":
+            return [item.text.strip() for item in array.iter("item")]
+    raise SystemExit("emoji_codes not found in " + ARRAYS)
+
+
+def position_of(positions, code):
+    return positions.get(code, positions.get(code.replace("-fe0f", "")))
+
+
+def set_bit(table, bit):
+    if table[bit >> 3] & (1 << (bit & 7)):
+        return False
+    table[bit >> 3] |= 1 << (bit & 7)
+    return True
+
+
+def load_metadata(path):
+    if path:
+        with open(path, encoding="utf-8") as f:
+            return json.load(f)["data"]
+    with urllib.request.urlopen(METADATA_URL, timeout=60) as response:
+        return json.load(response)["data"]
+
+
+def main():
+    parser = argparse.ArgumentParser(usage=__doc__)
+    parser.add_argument("--output", default=OUTPUT)
+    parser.add_argument("metadata", nargs="?")
+    args = parser.parse_args()
+    codes = load_codes()
+    positions = {}
+    for i, code in enumerate(codes):
+        positions[code] = i
+        positions.setdefault(code.replace("-fe0f", ""), i)
+
+    data = load_metadata(args.metadata)
+
+    count = len(codes)
+    bits = bytearray((count * count + 7) // 8)
+    ordered = bytearray(len(bits))
+    pairs = 0
+    # Latest image per (left, right) as drawn upstream, to compare both orders.
+    latest = {}
+    for left, entry in data.items():
+        for right, combos in entry.get("combinations", {}).items():
+            p1 = position_of(positions, left)
+            p2 = position_of(positions, right)
+            if p1 is None or p2 is None:
+                continue
+            for a, b in ((p1, p2), (p2, p1)):
+                if set_bit(bits, a * count + b):
+                    pairs += 1
+            for combo in combos:
+                if not combo.get("isLatest", True):
+                    continue
+                a = position_of(positions, combo.get("leftEmojiCodepoint", left))
+                b = position_of(positions, combo.get("rightEmojiCodepoint", right))
+                if a is not None and b is not None:
+                    latest[(a, b)] = combo.get("gStaticUrl")
+
+    sensitive = 0
+    for (a, b), url in latest.items():
+        reverse = latest.get((b, a))
+        if a < b and reverse is not None and reverse != url:
+            set_bit(ordered, a * count + b)
+            set_bit(ordered, b * count + a)
+            sensitive += 1
+
+    crc = zlib.crc32("\n".join(codes).encode("utf-8"))
+    os.makedirs(os.path.dirname(os.path.abspath(args.output)), exist_ok=True)
+    with open(args.output, "wb") as out:
+        out.write(struct.pack(">iiiI", MAGIC, VERSION, count, crc))
+        out.write(bits)
+        out.write(ordered)
+    print("%d codes, %d ordered pairs, %d order-sensitive pairs, %d bytes"
+          % (count, pairs, sensitive, 16 + len(bits) + len(ordered)))
+
+
+if __name__ == "__main__":
+    main()